@@ -0,0 +1,45 @@
+package net.phalanxx.cdiext.factory;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.List;
+
+/**
+ * {@link Factory} able to create many instances at once, e.g. to set itself up or to share buffers only once per
+ * batch. Used by {@link FactoryProducedBeans#createInstances} instead of calling
+ * {@link #createInstance(Class)} repeatedly.
+ *
+ * @author rbachlec
+ */
+public interface BatchFactory extends Factory {
+
+    /**
+     * Method creating the given number of instances of the given class.
+     *
+     * @param <T> type of objects to be created
+     * @param clazz class of objects to be created
+     * @param count number of instances to be created
+     * @return list of exactly count new instances of given class
+     */
+    <T> List<T> createInstances(Class<T> clazz, int count);
+
+}
@@ -0,0 +1,100 @@
+package net.phalanxx.cdiext.factory;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
+
+/**
+ * Factory used for {@link ProducedByFactory} classes not naming a factory of their own. Instances are created by
+ * invoking the no-arg constructor through a method handle, which is looked up once per class and cached. Custom
+ * factories may delegate to an instance of this class, all instances share the cache.
+ * <p/>
+ * The only bean type is this class, so the bean does not make injection points of type {@link Factory} of
+ * applications ambiguous.
+ *
+ * @author rbachlec
+ */
+@ApplicationScoped
+@Typed(DefaultFactory.class)
+public class DefaultFactory implements BatchFactory {
+
+    /** No-arg constructors of the created classes as method handles returning {@link Object}. */
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(final Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return MethodHandles.lookup().unreflectConstructor(constructor)
+                                    .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ex) {
+                // setAccessible throws a RuntimeException for classes in modules not opened to this one
+                throw new IllegalArgumentException("Class " + type.getName()
+                                                   + " does not have an accessible no-arg constructor.", ex);
+            }
+        }
+    };
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> T createInstance(final Class<T> clazz) {
+        return newInstance(clazz, CONSTRUCTORS.get(clazz));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> List<T> createInstances(final Class<T> clazz, final int count) {
+        MethodHandle constructor = CONSTRUCTORS.get(clazz);
+        List<T> instances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            instances.add(newInstance(clazz, constructor));
+        }
+        return instances;
+    }
+
+    /**
+     * Invokes the given constructor. Checked exceptions thrown by the constructor are wrapped.
+     *
+     * @param <T> type of object to be created
+     * @param clazz class of object to be created
+     * @param constructor method handle of the no-arg constructor
+     * @return new instance of given class
+     */
+    private static <T> T newInstance(final Class<T> clazz, final MethodHandle constructor) {
+        try {
+            return clazz.cast((Object) constructor.invokeExact());
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Creating an instance of class " + clazz.getName() + " failed.", ex);
+        }
+    }
+
+}
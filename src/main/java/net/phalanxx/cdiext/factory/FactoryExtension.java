@@ -21,7 +21,17 @@ package net.phalanxx.cdiext.factory;
  */
 
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.enterprise.event.Observes;
@@ -29,27 +39,59 @@ import javax.enterprise.inject.spi.AfterBeanDiscovery;
 import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.BeforeBeanDiscovery;
 import javax.enterprise.inject.spi.Extension;
 import javax.enterprise.inject.spi.InjectionTarget;
 import javax.enterprise.inject.spi.ProcessAnnotatedType;
 
 import net.phalanxx.cdiext.util.AnnotationUtil;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * A portable extension base class called by CDI on startup to find {@link ProducedByFactory}
  * annotated classes. For each class found the extension generates a special bean responsible for
  * instantiation of the annotated class. Sometimes it's difficult to write a producer method because
  * the type to be created is not known at compile time. So someone can write a generic factory for a
  * specific class.
+ * <p/>
+ * Archives containing an index written by the {@link FactoryIndexProcessor} are only checked for the indexed
+ * classes, all other classes of such an archive are skipped. The classes of archives without an index are all
+ * checked. An index applies to the archive it has been found in only, the indexes can be ignored altogether by
+ * setting the system property {@value #IGNORE_INDEX_PROPERTY} to true.
  *
  * @author rbachlec
  */
 public class FactoryExtension implements Extension {
 
+    /** Resource listing the {@link ProducedByFactory} classes of an archive. */
+    public static final String INDEX_RESOURCE = "META-INF/cdi-ext/produced-by-factory.idx";
+
+    /** System property disabling the indexes if set to true. */
+    public static final String IGNORE_INDEX_PROPERTY = "net.phalanxx.cdiext.ignoreFactoryIndex";
+
+    private final Logger log = LoggerFactory.getLogger(FactoryExtension.class);
+
     private final Set<AnnotatedType<Object>> toBeProducedByFactory = new HashSet<>();
 
+    /** Names of the indexed classes by location of their archive. */
+    private Map<String, Set<String>> indexes = new HashMap<>();
+
+    /** Index of the archive of each protection domain, null if the archive has no index. */
+    private final Map<ProtectionDomain, Set<String>> domainIndexes = new HashMap<>();
+
+    void beforeBeanDiscovery(@Observes final BeforeBeanDiscovery bbd) {
+        indexes = readIndexes();
+    }
+
     void processAnnotatedType(@Observes final ProcessAnnotatedType<Object> pat, final BeanManager beanManager) {
         final AnnotatedType<Object> annotatedType = pat.getAnnotatedType();
+        Class<Object> javaClass = annotatedType.getJavaClass();
+        Set<String> index = getIndex(javaClass);
+        if (index != null && !index.contains(javaClass.getName())) {
+            return;
+        }
         if (AnnotationUtil.isAnnotationPresent(annotatedType, beanManager, ProducedByFactory.class)) {
             toBeProducedByFactory.add(annotatedType);
             pat.veto();
@@ -57,14 +99,94 @@ public class FactoryExtension implements Extension {
     }
 
     void afterBeanDiscovery(@Observes final AfterBeanDiscovery abd, final BeanManager beanManager) {
+        Map<Set<?>, Set<?>> internedSets = new HashMap<>();
         for (final AnnotatedType<Object> annotatedType : toBeProducedByFactory) {
             InjectionTarget<Object> injectionTarget = beanManager.createInjectionTarget(annotatedType);
 
-            Bean<Object> bean = new FactoryProducedBean<>(annotatedType, injectionTarget, beanManager);
+            Bean<Object> bean = new FactoryProducedBean<>(annotatedType, injectionTarget, beanManager,
+                                                          internedSets);
             abd.addBean(bean);
         }
 
         toBeProducedByFactory.clear();
+        indexes.clear();
+        domainIndexes.clear();
+    }
+
+    /**
+     * Returns the index of the archive containing the given class.
+     *
+     * @param javaClass the class
+     * @return names of the indexed classes of the archive or null if the archive has no index
+     */
+    private Set<String> getIndex(final Class<?> javaClass) {
+        if (indexes.isEmpty()) {
+            return null;
+        }
+
+        ProtectionDomain domain = javaClass.getProtectionDomain();
+        if (!domainIndexes.containsKey(domain)) {
+            CodeSource codeSource = domain == null ? null : domain.getCodeSource();
+            URL location = codeSource == null ? null : codeSource.getLocation();
+            domainIndexes.put(domain, location == null ? null : indexes.get(location.toString()));
+        }
+        return domainIndexes.get(domain);
+    }
+
+    /**
+     * Reads all indexes on the classpath.
+     *
+     * @return names of the indexed classes by location of their archive, empty if there is no index, the indexes
+     *         are ignored or could not be read
+     */
+    private Map<String, Set<String>> readIndexes() {
+        Map<String, Set<String>> archiveIndexes = new HashMap<>();
+        if (Boolean.getBoolean(IGNORE_INDEX_PROPERTY)) {
+            return archiveIndexes;
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = FactoryExtension.class.getClassLoader();
+        }
+
+        try {
+            Enumeration<URL> indexUrls = classLoader.getResources(INDEX_RESOURCE);
+            while (indexUrls.hasMoreElements()) {
+                URL indexUrl = indexUrls.nextElement();
+                Set<String> types = new HashSet<>();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(indexUrl.openStream(),
+                                                                                      StandardCharsets.UTF_8))) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (!line.trim().isEmpty()) {
+                            types.add(line.trim());
+                        }
+                    }
+                }
+                archiveIndexes.put(getArchiveLocation(indexUrl), types);
+                log.debug("Found {} classes produced by factories in index {}.", types.size(), indexUrl);
+            }
+        } catch (IOException ex) {
+            log.warn("Could not read the factory indexes, all classes are checked.", ex);
+            archiveIndexes.clear();
+        }
+        return archiveIndexes;
+    }
+
+    /**
+     * Returns the location of the archive containing the given index in the form of a code source location, e.g.
+     * {@code file:/app/lib/beans.jar} or {@code file:/app/classes/}.
+     *
+     * @param indexUrl URL of the index
+     * @return location of the archive
+     */
+    static String getArchiveLocation(final URL indexUrl) {
+        String location = indexUrl.toString();
+        location = location.substring(0, location.length() - INDEX_RESOURCE.length());
+        if (location.startsWith("jar:") && location.endsWith("!/")) {
+            location = location.substring("jar:".length(), location.length() - "!/".length());
+        }
+        return location;
     }
 
 }
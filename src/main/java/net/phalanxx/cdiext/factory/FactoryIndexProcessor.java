@@ -0,0 +1,172 @@
+package net.phalanxx.cdiext.factory;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor writing the index of the {@link ProducedByFactory} classes of a compilation to
+ * {@value FactoryExtension#INDEX_RESOURCE}. Classes annotated with an annotation carrying
+ * {@link ProducedByFactory}, e.g. a stereotype, are indexed as well. The {@link FactoryExtension} skips all
+ * classes of an archive not listed in its index.
+ * <p/>
+ * An existing index is merged, so incremental compilations of a part of the classes keep the entries of the
+ * classes not compiled. These entries are checked again and dropped if the class no longer exists or is no
+ * longer produced by a factory.
+ *
+ * @author rbachlec
+ */
+@SupportedAnnotationTypes("*")
+public class FactoryIndexProcessor extends AbstractProcessor {
+
+    private final Set<String> indexedTypes = new TreeSet<>();
+
+    /** Binary names of all classes of this compilation. */
+    private final Set<String> compiledTypes = new HashSet<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        } else {
+            for (Element element : roundEnv.getRootElements()) {
+                if (element instanceof TypeElement) {
+                    collectTypes((TypeElement) element);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given type and its nested types to the index if they are produced by a factory.
+     *
+     * @param type the type
+     */
+    private void collectTypes(final TypeElement type) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        compiledTypes.add(binaryName);
+        if (type.getKind().isClass() && isProducedByFactory(type, new HashSet<Element>())) {
+            indexedTypes.add(binaryName);
+        }
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                collectTypes((TypeElement) enclosed);
+            }
+        }
+    }
+
+    /**
+     * Recursively checks the annotations of the given element for {@link ProducedByFactory}.
+     *
+     * @param element annotated element
+     * @param visited annotation types already checked
+     * @return true if the element carries the annotation directly or through one of its annotations
+     */
+    private boolean isProducedByFactory(final Element element, final Set<Element> visited) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(ProducedByFactory.class.getName())) {
+                return true;
+            }
+            if (visited.add(annotationType) && isProducedByFactory(annotationType, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the entries of an existing index for classes which have not been compiled but still exist and are
+     * produced by a factory.
+     */
+    private void mergeExistingIndex() {
+        Elements elements = processingEnv.getElementUtils();
+        try {
+            FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                    FactoryExtension.INDEX_RESOURCE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openInputStream(),
+                                                                                  StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String binaryName = line.trim();
+                    if (binaryName.isEmpty() || compiledTypes.contains(binaryName)) {
+                        continue;
+                    }
+                    TypeElement type = elements.getTypeElement(binaryName.replace('$', '.'));
+                    if (type != null && isProducedByFactory(type, new HashSet<Element>())) {
+                        indexedTypes.add(binaryName);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // there is no index yet
+        }
+    }
+
+    /**
+     * Writes the index, one binary class name per line.
+     */
+    private void writeIndex() {
+        mergeExistingIndex();
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                       FactoryExtension.INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String indexedType : indexedTypes) {
+                    writer.write(indexedType);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                     "Could not write the factory index: " + ex.getMessage());
+        }
+    }
+
+}
@@ -23,9 +23,15 @@ package net.phalanxx.cdiext.factory;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.enterprise.context.Dependent;
 import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Default;
@@ -38,74 +44,97 @@ import javax.enterprise.util.AnnotationLiteral;
 import javax.inject.Named;
 
 import net.phalanxx.cdiext.util.AnnotationUtil;
-import net.phalanxx.cdiext.util.BeanManagerUtil;
 
 /**
  * Bean produced by the FactoryExtension.
+ * <p/>
+ * The metadata of the bean is computed once when the bean is created. The sets are immutable, the qualifier and
+ * stereotype sets are interned by the extension, so beans created together with equal qualifiers or
+ * stereotypes share one set instance. The factory bean is resolved on the
+ * first creation, the reference of a normal scoped factory is kept, dependent factories are destroyed after
+ * each creation.
  *
  * @author rbachlec
  * @param <T> type to create {@link Bean} instance
  */
 public class FactoryProducedBean<T> implements Bean<T> {
 
-    private final AnnotatedType<T> annotatedType;
+    private static final Annotation ANY = new AnnotationLiteral<Any>() {};
+    private static final Annotation DEFAULT = new AnnotationLiteral<Default>() {};
+
+    private final Class<T> beanClass;
+    private final Set<Type> types;
+    private final Set<Annotation> qualifiers;
+    private final Class<? extends Annotation> scope;
+    private final String name;
+    private final Set<Class<? extends Annotation>> stereotypes;
+    private final Class<? extends Factory> factoryClass;
     private final InjectionTarget<T> injectionTarget;
     private final BeanManager beanManager;
 
+    private volatile Bean<Factory> factoryBean;
+    private volatile Factory factoryReference;
+
     FactoryProducedBean(final AnnotatedType<T> annotatedType, final InjectionTarget<T> injectionTarget,
                   final BeanManager beanManager) {
-        this.annotatedType = annotatedType;
+        this(annotatedType, injectionTarget, beanManager, new HashMap<Set<?>, Set<?>>());
+    }
+
+    /**
+     * Constructor interning the qualifier and stereotype sets in the given map.
+     *
+     * @param annotatedType annotated type of the bean
+     * @param injectionTarget injection target of the bean
+     * @param beanManager the bean manager
+     * @param internedSets interned sets shared with the other beans created by the extension
+     */
+    FactoryProducedBean(final AnnotatedType<T> annotatedType, final InjectionTarget<T> injectionTarget,
+                  final BeanManager beanManager, final Map<Set<?>, Set<?>> internedSets) {
+        this.beanClass = annotatedType.getJavaClass();
+        this.types = Collections.unmodifiableSet(new HashSet<>(annotatedType.getTypeClosure()));
+        this.qualifiers = intern(collectQualifiers(annotatedType, beanManager), internedSets);
+        this.scope = AnnotationUtil.getScope(annotatedType, beanManager).annotationType();
+        this.stereotypes = intern(collectStereotypes(annotatedType, beanManager), internedSets);
+
+        Named namedAnnotation = AnnotationUtil.getAnnotation(annotatedType, beanManager, Named.class);
+        this.name = namedAnnotation == null ? null : namedAnnotation.value();
+
+        ProducedByFactory annotation = AnnotationUtil.getAnnotation(annotatedType, beanManager,
+                                                                    ProducedByFactory.class);
+        this.factoryClass = annotation == null ? null : annotation.factory();
+
         this.injectionTarget = injectionTarget;
         this.beanManager = beanManager;
     }
 
     @Override
     public final Set<Type> getTypes() {
-        return annotatedType.getTypeClosure();
+        return types;
     }
 
     @Override
     public final Set<Annotation> getQualifiers() {
-        Set<Annotation> qualifiers = new HashSet<>();
-        qualifiers.add(new AnnotationLiteral<Any>() {});
-        qualifiers.add(new AnnotationLiteral<Default>() {});
-        qualifiers.addAll(AnnotationUtil.getQualifiers(annotatedType, beanManager));
-
         return qualifiers;
     }
 
     @Override
     public final Class<? extends Annotation> getScope() {
-        return AnnotationUtil.getScope(annotatedType, beanManager).annotationType();
+        return scope;
     }
 
     @Override
     public final String getName() {
-        String name = null;
-
-        Named namedAnnotation = AnnotationUtil.getAnnotation(annotatedType, beanManager, Named.class);
-        if (namedAnnotation != null) {
-            name = namedAnnotation.value();
-        }
-
         return name;
     }
 
     @Override
     public final Set<Class<? extends Annotation>> getStereotypes() {
-        Set<Class<? extends Annotation>> stereotypeClasses = new HashSet<>();
-
-        Set<Annotation> stereotypes = AnnotationUtil.getStereotypes(annotatedType, beanManager);
-        for (Annotation stereotype : stereotypes) {
-            stereotypeClasses.add(stereotype.annotationType());
-        }
-
-        return stereotypeClasses;
+        return stereotypes;
     }
 
     @Override
     public final Class<T> getBeanClass() {
-        return annotatedType.getJavaClass();
+        return beanClass;
     }
 
     @Override
@@ -125,19 +154,47 @@ public class FactoryProducedBean<T> implements Bean<T> {
 
     @Override
     public final T create(final CreationalContext<T> creationalContext) {
-        ProducedByFactory annotation = AnnotationUtil.getAnnotation(annotatedType, beanManager, ProducedByFactory.class);
-        if (annotation == null) {
-            throw new IllegalArgumentException("Class " + annotatedType.getClass() +
-                                               " does not define a factory class.");
+        return createInstances(Collections.singletonList(creationalContext)).get(0);
+    }
+
+    /**
+     * Creates one instance per given creational context. The factory is looked up once for all instances, a
+     * {@link BatchFactory} creates all of them with a single call.
+     *
+     * @param creationalContexts creational contexts of the instances to be created
+     * @return list of new instances in the order of the creational contexts
+     */
+    public final List<T> createInstances(final List<CreationalContext<T>> creationalContexts) {
+        if (factoryClass == null) {
+            throw new IllegalArgumentException("Class " + beanClass + " does not define a factory class.");
         }
 
-        Factory factory = BeanManagerUtil.getContextualInstance(beanManager, annotation.factory());
+        List<T> instances;
+        Factory factory = factoryReference;
+        if (factory != null) {
+            instances = produce(factory, creationalContexts.size());
+        } else {
+            Bean<Factory> bean = getFactoryBean();
+            CreationalContext<Factory> factoryContext = beanManager.createCreationalContext(bean);
+            factory = (Factory) beanManager.getReference(bean, factoryClass, factoryContext);
+            if (beanManager.isNormalScope(bean.getScope())) {
+                factoryReference = factory;
+            }
 
-        T instance = factory.createInstance(annotatedType.getJavaClass());
-        injectionTarget.inject(instance, creationalContext);
-        injectionTarget.postConstruct(instance);
+            try {
+                instances = produce(factory, creationalContexts.size());
+            } finally {
+                if (Dependent.class.equals(bean.getScope())) {
+                    factoryContext.release();
+                }
+            }
+        }
 
-        return instance;
+        for (int i = 0; i < instances.size(); i++) {
+            injectionTarget.inject(instances.get(i), creationalContexts.get(i));
+            injectionTarget.postConstruct(instances.get(i));
+        }
+        return instances;
     }
 
     @Override
@@ -147,4 +204,100 @@ public class FactoryProducedBean<T> implements Bean<T> {
         creationalContext.release();
     }
 
+    /**
+     * Lets the factory create the given number of instances.
+     *
+     * @param factory the factory
+     * @param count number of instances
+     * @return new instances
+     */
+    private List<T> produce(final Factory factory, final int count) {
+        if (count == 1) {
+            return Collections.singletonList(factory.createInstance(beanClass));
+        }
+
+        if (factory instanceof BatchFactory) {
+            List<T> instances = ((BatchFactory) factory).createInstances(beanClass, count);
+            if (instances.size() != count) {
+                throw new IllegalStateException("Factory " + factoryClass + " created " + instances.size()
+                                                + " instead of " + count + " instances of " + beanClass + ".");
+            }
+            return instances;
+        }
+
+        List<T> instances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            instances.add(factory.createInstance(beanClass));
+        }
+        return instances;
+    }
+
+    /**
+     * Returns the bean of the factory, resolving it on the first call.
+     *
+     * @return factory bean
+     */
+    @SuppressWarnings("unchecked")
+    private Bean<Factory> getFactoryBean() {
+        Bean<Factory> bean = factoryBean;
+        if (bean == null) {
+            bean = (Bean<Factory>) beanManager.resolve(beanManager.getBeans(factoryClass));
+            if (bean == null) {
+                throw new IllegalStateException("There is no bean of factory class " + factoryClass + ".");
+            }
+            factoryBean = bean;
+        }
+        return bean;
+    }
+
+    /**
+     * Returns the qualifiers of the given annotated type together with {@link Any} and {@link Default}.
+     *
+     * @param annotatedType annotated type of the bean
+     * @param beanManager the bean manager
+     * @return qualifiers of the bean
+     */
+    private static Set<Annotation> collectQualifiers(final AnnotatedType<?> annotatedType,
+                                                     final BeanManager beanManager) {
+        Set<Annotation> annotations = new HashSet<>();
+        annotations.add(ANY);
+        annotations.add(DEFAULT);
+        annotations.addAll(AnnotationUtil.getQualifiers(annotatedType, beanManager));
+        return annotations;
+    }
+
+    /**
+     * Returns the classes of the stereotypes of the given annotated type.
+     *
+     * @param annotatedType annotated type of the bean
+     * @param beanManager the bean manager
+     * @return stereotypes of the bean
+     */
+    private static Set<Class<? extends Annotation>> collectStereotypes(final AnnotatedType<?> annotatedType,
+                                                                       final BeanManager beanManager) {
+        Set<Class<? extends Annotation>> stereotypeClasses = new HashSet<>();
+        for (Annotation stereotype : AnnotationUtil.getStereotypes(annotatedType, beanManager)) {
+            stereotypeClasses.add(stereotype.annotationType());
+        }
+        return stereotypeClasses;
+    }
+
+    /**
+     * Returns an immutable set equal to the given set, shared with all other beans having an equal set.
+     *
+     * @param <E> type of the elements
+     * @param set the set
+     * @param internedSets the interned sets
+     * @return interned immutable set
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> Set<E> intern(final Set<E> set, final Map<Set<?>, Set<?>> internedSets) {
+        Set<E> interned = (Set<E>) internedSets.get(set);
+        if (interned == null) {
+            interned = Collections.unmodifiableSet(new HashSet<>(set));
+            internedSets.put(interned, interned);
+        }
+        return interned;
+    }
+
 }
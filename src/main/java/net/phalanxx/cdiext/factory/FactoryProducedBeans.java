@@ -0,0 +1,72 @@
+package net.phalanxx.cdiext.factory;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+/**
+ * Util with methods creating many instances of {@link ProducedByFactory} beans at once.
+ *
+ * @author rbachlec
+ */
+public final class FactoryProducedBeans {
+
+    private FactoryProducedBeans() {
+        // utility class
+    }
+
+    /**
+     * Creates the given number of instances of a {@link ProducedByFactory} bean. The bean and its factory are
+     * resolved once for all instances and a {@link BatchFactory} creates all instances with a single call. Each
+     * instance gets its own creational context and is injected and initialized like an instance created by the
+     * container. The instances are owned by the caller like dependent objects.
+     *
+     * @param <T> type of the instances to be created
+     * @param beanManager the bean manager
+     * @param type class of the instances to be created
+     * @param count number of instances to be created
+     * @param qualifiers qualifiers of the bean
+     * @return list of new instances
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> createInstances(final BeanManager beanManager, final Class<T> type, final int count,
+                                              final Annotation... qualifiers) {
+        Bean<?> bean = beanManager.resolve(beanManager.getBeans(type, qualifiers));
+        if (!(bean instanceof FactoryProducedBean)) {
+            throw new IllegalArgumentException("Class " + type + " is not produced by a factory.");
+        }
+
+        FactoryProducedBean<T> factoryProducedBean = (FactoryProducedBean<T>) bean;
+        List<CreationalContext<T>> creationalContexts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            creationalContexts.add(beanManager.createCreationalContext(factoryProducedBean));
+        }
+        return factoryProducedBean.createInstances(creationalContexts);
+    }
+
+}
@@ -39,10 +39,11 @@ import java.lang.annotation.Target;
 public @interface ProducedByFactory {
 
     /**
-     * The class of the factory to be used for creation of annotated types.
+     * The class of the factory to be used for creation of annotated types. Defaults to the
+     * {@link DefaultFactory} invoking the no-arg constructor.
      *
      * @return class implementing the {@link Factory} interface
      */
-    Class<? extends Factory> factory();
+    Class<? extends Factory> factory() default DefaultFactory.class;
 
 }
@@ -0,0 +1,136 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counters of a single bean in a disposable singleton context. Recording does not allocate.
+ * <p/>
+ * Hits are recorded on every lookup, so they are counted in cells striped by thread and padded to separate
+ * cache lines. Concurrent readers of a bean then rarely increment the same cell, the cells are summed when a
+ * snapshot is taken.
+ *
+ * @author rbachlec
+ */
+final class BeanCounters {
+
+    /** Number of buckets of the creation time histogram. */
+    static final int HISTOGRAM_BUCKETS = 32;
+
+    /** Number of hit cells, a power of two not smaller than the number of processors. */
+    private static final int HIT_STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    /** Distance between two hit cells in longs, so that every cell has its own cache line. */
+    private static final int HIT_CELL_PADDING = 8;
+
+    private final AtomicLongArray hits = new AtomicLongArray(HIT_STRIPES * HIT_CELL_PADDING);
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong creationNanos = new AtomicLong();
+    private final AtomicLongArray creationTimeHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final AtomicLongArray removals = new AtomicLongArray(RemovalCause.values().length);
+
+    /**
+     * Records a lookup which found the current instance.
+     */
+    void recordHit() {
+        hits.incrementAndGet(hitCell());
+    }
+
+    /**
+     * Records a lookup which had to create the instance or wait for its creation.
+     */
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Records the creation of an instance.
+     *
+     * @param nanos duration of the creation in nanoseconds
+     */
+    void recordCreation(final long nanos) {
+        creations.incrementAndGet();
+        creationNanos.addAndGet(nanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros), HISTOGRAM_BUCKETS - 1);
+        creationTimeHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Records the removal of an instance.
+     *
+     * @param cause why the instance has been removed
+     */
+    void recordRemoval(final RemovalCause cause) {
+        removals.incrementAndGet(cause.ordinal());
+    }
+
+    /**
+     * Returns the index of the hit cell of the current thread.
+     *
+     * @return index of the cell
+     */
+    private static int hitCell() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (id >>> 32) & (HIT_STRIPES - 1)) * HIT_CELL_PADDING;
+    }
+
+    /**
+     * Returns the sum of the hit cells.
+     *
+     * @return number of hits
+     */
+    private long sumHits() {
+        long sum = 0;
+        for (int i = 0; i < HIT_STRIPES; i++) {
+            sum += hits.get(i * HIT_CELL_PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns a snapshot of the counters.
+     *
+     * @param bean description of the bean
+     * @param live whether the bean currently has an instance
+     * @return statistics of the bean
+     */
+    BeanStatistics snapshot(final String bean, final boolean live) {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = creationTimeHistogram.get(i);
+        }
+        return new BeanStatistics(bean, live, sumHits(), misses.get(), creations.get(), creationNanos.get(),
+                                  histogram, removals.get(RemovalCause.EXPLICIT.ordinal()),
+                                  removals.get(RemovalCause.EXPIRED.ordinal()),
+                                  removals.get(RemovalCause.SIZE.ordinal()),
+                                  removals.get(RemovalCause.COLLECTED.ordinal()),
+                                  removals.get(RemovalCause.REPLACED.ordinal()),
+                                  removals.get(RemovalCause.SHUTDOWN.ordinal()));
+    }
+
+}
@@ -0,0 +1,160 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.enterprise.inject.spi.Bean;
+
+/**
+ * Creates keys identifying beans across restarts and nodes. The keys do not depend on the string
+ * representation of the qualifiers, which differs between annotation implementations.
+ *
+ * @author rbachlec
+ */
+final class BeanKey {
+
+    private static final Comparator<Method> BY_NAME = new Comparator<Method>() {
+        @Override
+        public int compare(final Method method, final Method otherMethod) {
+            return method.getName().compareTo(otherMethod.getName());
+        }
+    };
+
+    private BeanKey() {
+    }
+
+    /**
+     * Returns the key of a bean consisting of its bean class and its sorted qualifiers.
+     *
+     * @param bean the bean
+     * @return key of the bean
+     */
+    static String of(final Bean<?> bean) {
+        return of(bean.getBeanClass(), bean.getQualifiers());
+    }
+
+    /**
+     * Returns the key of a bean with the given class and qualifiers. Each qualifier is represented by the name of
+     * its type and its members sorted by name.
+     *
+     * @param beanClass the bean class
+     * @param qualifiers the qualifiers
+     * @return key of the bean
+     */
+    static String of(final Class<?> beanClass, final Set<Annotation> qualifiers) {
+        List<String> qualifierKeys = new ArrayList<>();
+        for (Annotation qualifier : qualifiers) {
+            qualifierKeys.add(toKey(qualifier));
+        }
+        Collections.sort(qualifierKeys);
+        return beanClass.getName() + qualifierKeys;
+    }
+
+    /**
+     * Returns the key of an annotation: the name of its type followed by the name=value pairs of its members
+     * sorted by member name.
+     *
+     * @param annotation the annotation
+     * @return key of the annotation
+     */
+    private static String toKey(final Annotation annotation) {
+        Class<? extends Annotation> annotationType = annotation.annotationType();
+        List<Method> members = new ArrayList<>();
+        for (Method member : annotationType.getDeclaredMethods()) {
+            if (member.getParameterTypes().length == 0) {
+                members.add(member);
+            }
+        }
+        Collections.sort(members, BY_NAME);
+
+        StringBuilder key = new StringBuilder("@").append(annotationType.getName()).append('(');
+        for (int i = 0; i < members.size(); i++) {
+            Method member = members.get(i);
+            if (i > 0) {
+                key.append(", ");
+            }
+            key.append(member.getName()).append('=');
+            appendValue(key, getValue(annotation, member));
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * Returns the value of a member of an annotation.
+     *
+     * @param annotation the annotation
+     * @param member the member
+     * @return value of the member
+     */
+    private static Object getValue(final Annotation annotation, final Method member) {
+        try {
+            try {
+                return member.invoke(annotation);
+            } catch (IllegalAccessException ex) {
+                member.setAccessible(true);
+                return member.invoke(annotation);
+            }
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException("Could not read member " + member.getName() + " of qualifier "
+                                            + annotation.annotationType().getName() + ".", ex);
+        }
+    }
+
+    /**
+     * Appends a member value in a representation independent of the annotation implementation.
+     *
+     * @param key the key to append to
+     * @param value value of the member
+     */
+    private static void appendValue(final StringBuilder key, final Object value) {
+        if (value.getClass().isArray()) {
+            key.append('{');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    key.append(", ");
+                }
+                appendValue(key, Array.get(value, i));
+            }
+            key.append('}');
+        } else if (value instanceof Class) {
+            key.append(((Class<?>) value).getName());
+        } else if (value instanceof Enum) {
+            key.append(((Enum<?>) value).name());
+        } else if (value instanceof Annotation) {
+            key.append(toKey((Annotation) value));
+        } else if (value instanceof String) {
+            key.append('"').append(value).append('"');
+        } else {
+            key.append(value);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of the instances of a {@link Pooled} bean.
+ * <p/>
+ * Idle instances are kept in one queue per stripe, a thread gives back to and borrows from the stripe chosen
+ * by its id first and steals from the other stripes only if its own one is empty. The number of stripes is
+ * the number of processors rounded up to a power of two. A semaphore holds one permit per instance which is
+ * not leased, so borrowers block once the maximum number of instances is leased.
+ *
+ * @author rbachlec
+ * @param <T> type of the bean
+ */
+final class BeanPool<T> {
+
+    private final Logger log = LoggerFactory.getLogger(BeanPool.class);
+
+    private final Bean<T> bean;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutNanos;
+    private final long maxWaitNanos;
+
+    private final List<Queue<PooledInstance<T>>> stripes;
+    private final int stripeMask;
+    private final Semaphore permits;
+
+    /** Number of existing instances, leased or idle. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile BeanManager beanManager;
+    private volatile boolean closed;
+
+    /**
+     * Creates the pool of a bean.
+     *
+     * @param bean the bean
+     * @param poolSize size of the pool, the defaults of {@link PoolSize} are used if null
+     */
+    @SuppressWarnings("unchecked")
+    BeanPool(final Bean<T> bean, final PoolSize poolSize) {
+        this.bean = bean;
+        if (poolSize == null) {
+            this.minSize = 0;
+            this.maxSize = 8;
+            this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+            this.maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+        } else {
+            this.minSize = poolSize.min();
+            this.maxSize = poolSize.max();
+            this.idleTimeoutNanos = poolSize.unit().toNanos(poolSize.idleTimeout());
+            this.maxWaitNanos = poolSize.unit().toNanos(poolSize.maxWait());
+        }
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size of bean " + bean + ": min " + minSize
+                                               + ", max " + maxSize + ".");
+        }
+
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+        List<Queue<PooledInstance<T>>> stripeList = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripeList.add(new ConcurrentLinkedQueue<PooledInstance<T>>());
+        }
+        this.stripes = Collections.unmodifiableList(stripeList);
+        this.stripeMask = stripeCount - 1;
+        this.permits = new Semaphore(maxSize);
+    }
+
+    /**
+     * Creates the minimum number of instances. Instances created from now on get their own creational
+     * context from the given bean manager instead of the one of the lookup.
+     *
+     * @param manager the bean manager
+     */
+    void prefill(final BeanManager manager) {
+        this.beanManager = manager;
+        for (int i = 0; i < minSize; i++) {
+            int current = size.get();
+            if (current >= minSize || !size.compareAndSet(current, current + 1)) {
+                break;
+            }
+            PooledInstance<T> pooledInstance = create(null);
+            pooledInstance.idleSince = System.nanoTime();
+            stripes.get(i & stripeMask).offer(pooledInstance);
+        }
+    }
+
+    /**
+     * Borrows an instance, waiting if all instances are leased.
+     *
+     * @param creationalContext creational context of the lookup, used if an instance has to be created
+     *                          before the pool has been prefilled
+     * @return the borrowed instance
+     */
+    PooledInstance<T> borrow(final CreationalContext<T> creationalContext) {
+        acquirePermit();
+        try {
+            int home = stripeIndex();
+            while (true) {
+                for (int i = 0; i <= stripeMask; i++) {
+                    PooledInstance<T> pooledInstance = stripes.get((home + i) & stripeMask).poll();
+                    if (pooledInstance != null) {
+                        return pooledInstance;
+                    }
+                }
+
+                int current = size.get();
+                if (current < maxSize && size.compareAndSet(current, current + 1)) {
+                    try {
+                        return create(creationalContext);
+                    } catch (RuntimeException ex) {
+                        size.decrementAndGet();
+                        throw ex;
+                    }
+                }
+                // an instance is being given back or evicted right now
+                Thread.yield();
+            }
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gives back a borrowed instance. The instance is destroyed if the pool has been closed meanwhile.
+     *
+     * @param pooledInstance the borrowed instance
+     */
+    void giveBack(final PooledInstance<T> pooledInstance) {
+        if (closed) {
+            size.decrementAndGet();
+            destroy(pooledInstance);
+        } else {
+            pooledInstance.idleSince = System.nanoTime();
+            stripes.get(stripeIndex()).offer(pooledInstance);
+        }
+        permits.release();
+    }
+
+    /**
+     * Destroys instances which have been idle longer than the idle timeout as long as the pool holds more
+     * than the minimum number of instances.
+     *
+     * @param now current value of {@link System#nanoTime()}
+     */
+    void evictIdle(final long now) {
+        if (idleTimeoutNanos <= 0) {
+            return;
+        }
+
+        for (Queue<PooledInstance<T>> stripe : stripes) {
+            for (PooledInstance<T> pooledInstance : stripe) {
+                if (size.get() <= minSize) {
+                    return;
+                }
+                if (now - pooledInstance.idleSince >= idleTimeoutNanos && stripe.remove(pooledInstance)) {
+                    size.decrementAndGet();
+                    log.debug("Evicting idle instance of bean {}.", bean);
+                    destroy(pooledInstance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the pool and destroys all idle instances. Leased instances are destroyed when given back.
+     */
+    void close() {
+        closed = true;
+        for (Queue<PooledInstance<T>> stripe : stripes) {
+            PooledInstance<T> pooledInstance;
+            while ((pooledInstance = stripe.poll()) != null) {
+                size.decrementAndGet();
+                destroy(pooledInstance);
+            }
+        }
+    }
+
+    private void acquirePermit() {
+        if (closed) {
+            throw new IllegalStateException("The pool of bean " + bean + " has been closed.");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("No instance of bean " + bean + " became available within "
+                                                + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an instance of bean " + bean + ".", ex);
+        }
+    }
+
+    private int stripeIndex() {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+
+    private PooledInstance<T> create(final CreationalContext<T> creationalContext) {
+        BeanManager manager = beanManager;
+        CreationalContext<T> instanceContext =
+                manager == null ? creationalContext : manager.createCreationalContext(bean);
+        log.debug("Creating pooled instance of bean {}.", bean);
+        return new PooledInstance<>(bean.create(instanceContext), instanceContext);
+    }
+
+    private void destroy(final PooledInstance<T> pooledInstance) {
+        try {
+            bean.destroy(pooledInstance.instance, pooledInstance.creationalContext);
+        } catch (RuntimeException ex) {
+            log.error("Destroying pooled instance of bean " + bean + " failed.", ex);
+        }
+    }
+
+    /**
+     * Instance of the pool.
+     *
+     * @param <T> type of the bean
+     */
+    static final class PooledInstance<T> implements ContextualInstance<T> {
+        private final T instance;
+        private final CreationalContext<T> creationalContext;
+        private volatile long idleSince;
+
+        PooledInstance(final T instance, final CreationalContext<T> creationalContext) {
+            this.instance = instance;
+            this.creationalContext = creationalContext;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public T getInstance() {
+            return instance;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CreationalContext<T> getCreationalContext() {
+            return creationalContext;
+        }
+    }
+
+}
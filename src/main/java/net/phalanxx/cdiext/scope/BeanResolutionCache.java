@@ -0,0 +1,110 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+/**
+ * Caches the beans resolved per type and qualifiers. The set of beans does not change after the deployment,
+ * so a resolution stays valid for the lifetime of the container. Failed resolutions are not cached.
+ *
+ * @author rbachlec
+ */
+final class BeanResolutionCache {
+
+    private final ConcurrentHashMap<Key, Bean<?>> resolvedBeans = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the bean of the given type and qualifiers, resolving it with the bean manager on the first call.
+     *
+     * @param <T> type of the bean
+     * @param manager the bean manager
+     * @param type bean type
+     * @param qualifiers qualifiers of the bean
+     * @return the resolved bean or null if there is no such bean
+     */
+    @SuppressWarnings("unchecked")
+    <T> Bean<T> resolve(final BeanManager manager, final Class<T> type, final Annotation... qualifiers) {
+        Key key = new Key(type, qualifiers);
+        Bean<?> bean = resolvedBeans.get(key);
+        if (bean == null) {
+            bean = manager.resolve(manager.getBeans(type, qualifiers));
+            if (bean != null) {
+                resolvedBeans.putIfAbsent(key, bean);
+            }
+        }
+        return (Bean<T>) bean;
+    }
+
+    /**
+     * Type and qualifiers of a lookup, the order of the qualifiers does not matter.
+     */
+    private static final class Key {
+        private final Class<?> type;
+        private final Set<Annotation> qualifiers;
+
+        /**
+         * Constructor.
+         *
+         * @param type bean type
+         * @param qualifiers qualifiers of the bean
+         */
+        public Key(final Class<?> type, final Annotation[] qualifiers) {
+            this.type = type;
+            if (qualifiers.length == 0) {
+                this.qualifiers = Collections.emptySet();
+            } else if (qualifiers.length == 1) {
+                this.qualifiers = Collections.singleton(qualifiers[0]);
+            } else {
+                this.qualifiers = new HashSet<>(Arrays.asList(qualifiers));
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return type.equals(other.type) && qualifiers.equals(other.qualifiers);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + qualifiers.hashCode();
+        }
+    }
+
+}
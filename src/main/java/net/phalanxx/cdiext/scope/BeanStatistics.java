@@ -0,0 +1,165 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of a single bean in a disposable singleton context.
+ *
+ * @author rbachlec
+ */
+public class BeanStatistics {
+
+    private final String bean;
+    private final boolean live;
+    private final long hits;
+    private final long misses;
+    private final long creations;
+    private final long totalCreationTimeNanos;
+    private final long[] creationTimeHistogram;
+    private final long disposals;
+    private final long expirations;
+    private final long evictions;
+    private final long collections;
+    private final long replacements;
+    private final long shutdowns;
+
+    @ConstructorProperties({"bean", "live", "hits", "misses", "creations", "totalCreationTimeNanos",
+                            "creationTimeHistogram", "disposals", "expirations", "evictions", "collections",
+                            "replacements", "shutdowns"})
+    public BeanStatistics(final String bean, final boolean live, final long hits, final long misses,
+                          final long creations, final long totalCreationTimeNanos,
+                          final long[] creationTimeHistogram, final long disposals, final long expirations,
+                          final long evictions, final long collections, final long replacements,
+                          final long shutdowns) {
+        this.bean = bean;
+        this.live = live;
+        this.hits = hits;
+        this.misses = misses;
+        this.creations = creations;
+        this.totalCreationTimeNanos = totalCreationTimeNanos;
+        this.creationTimeHistogram = creationTimeHistogram.clone();
+        this.disposals = disposals;
+        this.expirations = expirations;
+        this.evictions = evictions;
+        this.collections = collections;
+        this.replacements = replacements;
+        this.shutdowns = shutdowns;
+    }
+
+    /**
+     * @return description of the bean
+     */
+    public String getBean() {
+        return bean;
+    }
+
+    /**
+     * @return true if the bean currently has an instance in the context
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    /**
+     * @return number of lookups which found the current instance
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which had to create the instance or wait for its creation
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of created instances
+     */
+    public long getCreations() {
+        return creations;
+    }
+
+    /**
+     * @return total time spent creating instances in nanoseconds
+     */
+    public long getTotalCreationTimeNanos() {
+        return totalCreationTimeNanos;
+    }
+
+    /**
+     * Returns the histogram of the creation times. Bucket 0 counts creations faster than one microsecond,
+     * bucket i counts creations taking at least 2^(i-1) and less than 2^i microseconds. The last bucket
+     * counts all slower creations.
+     *
+     * @return number of creations per bucket
+     */
+    public long[] getCreationTimeHistogram() {
+        return creationTimeHistogram.clone();
+    }
+
+    /**
+     * @return number of explicitly disposed instances
+     */
+    public long getDisposals() {
+        return disposals;
+    }
+
+    /**
+     * @return number of expired instances
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return number of instances evicted because of the maximum size or weight
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of collected {@link Reclaimable} instances
+     */
+    public long getCollections() {
+        return collections;
+    }
+
+    /**
+     * @return number of instances replaced by a refresh
+     */
+    public long getReplacements() {
+        return replacements;
+    }
+
+    /**
+     * @return number of instances destroyed because the container shuts down
+     */
+    public long getShutdowns() {
+        return shutdowns;
+    }
+
+}
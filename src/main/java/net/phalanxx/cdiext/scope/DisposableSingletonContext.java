@@ -22,6 +22,11 @@ package net.phalanxx.cdiext.scope;
 
 
 import java.lang.annotation.Annotation;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.inject.spi.Bean;
@@ -30,30 +35,63 @@ import javax.inject.Inject;
 
 /**
  * This class can be used to obtain or dispose a singleton instance for a given class.
+ * <p/>
+ * Disposal by type or filter, refreshing and the settings of the context cover the
+ * {@link ProxiedDisposableSingleton} scope as well. The bounds are applied to each of both contexts separately.
  *
  * @author rbachlec
  */
 public class DisposableSingletonContext {
 
+    /** Seconds a refreshed instance stays usable before it is destroyed. */
+    public static final long DEFAULT_GRACE_PERIOD_SECONDS = 10;
+
+    /** Milliseconds invalidations are collected before they are broadcast to other nodes. */
+    public static final long DEFAULT_BATCH_WINDOW_MILLIS = 20;
+
+    private static final Annotation[] NO_QUALIFIERS = new Annotation[0];
+
     @Inject private BeanManager beanManager;
 
+    private DisposableSingletonContextImpl context;
+    private DisposableSingletonContextImpl proxiedContext;
+
     /**
      * If there has already been created a singleton instance for the given type this instance is
      * returned. Otherwise a new instance is created and put in the {@link DisposableSingleton}
-     * context.
+     * context. For {@link ProxiedDisposableSingleton} beans the client proxy is returned.
      *
      * @param <T> type of singleton to be created
      * @param type class of singleton to be created
      * @return disposable singleton instance
      */
-    @SuppressWarnings("unchecked")
     public <T> T getSingleton(final Class<T> type) {
+        return getSingleton(type, NO_QUALIFIERS);
+    }
+
+    /**
+     * Returns the singleton instance of the bean with the given type and qualifiers, creating it if necessary.
+     * The bean is resolved only on the first call for a type and qualifiers, and a creational context is only
+     * created if there is no instance yet.
+     *
+     * @param <T> type of singleton to be created
+     * @param type class of singleton to be created
+     * @param qualifiers qualifiers of the bean
+     * @return disposable singleton instance or null if there is no disposable singleton bean of this type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getSingleton(final Class<T> type, final Annotation... qualifiers) {
         T result = null;
-        Bean<T> bean = (Bean<T>) beanManager.resolve(beanManager.getBeans(type));
+        Bean<T> bean = resolve(type, qualifiers);
 
         if (bean != null) {
             Class<? extends Annotation> scope = bean.getScope();
             if (DisposableSingleton.class.equals(scope)) {
+                result = getContext().get(bean);
+                if (result == null) {
+                    result = getContext().get(bean, beanManager.createCreationalContext(bean));
+                }
+            } else if (ProxiedDisposableSingleton.class.equals(scope)) {
                 CreationalContext<T> creationalContext = beanManager.createCreationalContext(bean);
                 result = (T) beanManager.getReference(bean, type, creationalContext);
             }
@@ -61,6 +99,63 @@ public class DisposableSingletonContext {
         return result;
     }
 
+    /**
+     * Leases the singleton instance for the given type, creating it if necessary. The instance is not destroyed
+     * before the lease has been closed, even if it is disposed meanwhile, so callers may use it without
+     * risking a use after destruction. Leasing is lock-free.
+     *
+     * @param <T> type of the singleton to be leased
+     * @param type class of the singleton to be leased
+     * @return lease of the instance or null if there is no {@link DisposableSingleton} bean of this type
+     */
+    public <T> SingletonLease<T> acquire(final Class<T> type) {
+        SingletonLease<T> result = null;
+        Bean<T> bean = resolve(type, NO_QUALIFIERS);
+
+        if (bean != null && DisposableSingleton.class.equals(bean.getScope())) {
+            result = getContext().acquire(bean, beanManager);
+        }
+        return result;
+    }
+
+    /**
+     * Refreshes the singleton instance for the given type. The replacement is created in the background while
+     * callers keep getting the current instance, then swapped in atomically. The replaced instance is destroyed
+     * after a grace period of {@value #DEFAULT_GRACE_PERIOD_SECONDS} seconds.
+     *
+     * @param <T> type of the singleton to be refreshed
+     * @param type class of the singleton to be refreshed
+     * @return future providing the replacement or null if there is no disposable singleton bean of this type
+     */
+    public <T> Future<T> refresh(final Class<T> type) {
+        return refresh(type, DEFAULT_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Refreshes the singleton instance for the given type. The replacement is created in the background while
+     * callers keep getting the current instance, then swapped in atomically. The replaced instance is destroyed
+     * after the given grace period.
+     *
+     * @param <T> type of the singleton to be refreshed
+     * @param type class of the singleton to be refreshed
+     * @param gracePeriod time the replaced instance stays usable by callers still holding it
+     * @param unit unit of the grace period
+     * @return future providing the replacement or null if there is no disposable singleton bean of this type
+     */
+    public <T> Future<T> refresh(final Class<T> type, final long gracePeriod, final TimeUnit unit) {
+        Future<T> result = null;
+        Bean<T> bean = resolve(type, NO_QUALIFIERS);
+
+        if (bean != null) {
+            DisposableSingletonContextImpl scopeContext = getContext(bean.getScope());
+            if (scopeContext != null) {
+                CreationalContext<T> creationalContext = beanManager.createCreationalContext(bean);
+                result = scopeContext.refresh(bean, creationalContext, gracePeriod, unit);
+            }
+        }
+        return result;
+    }
+
     /**
      * Disposes a given singleton instance. If the given object is not present in the
      * {@link DisposableSingleton} context an exception is thrown.
@@ -69,9 +164,201 @@ public class DisposableSingletonContext {
      * @param singleton disposable singleton instance
      */
     public <T> void disposeSingleton(final T singleton) {
-        DisposableSingletonContextImpl context =
-                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
-        context.dispose(singleton);
+        getContext().dispose(singleton);
+    }
+
+    /**
+     * Disposes all instances in the {@link DisposableSingleton} context.
+     *
+     * @return number of disposed instances
+     */
+    public int disposeAll() {
+        return disposeAll(null);
+    }
+
+    /**
+     * Disposes all instances in the {@link DisposableSingleton} context. The instances are removed from the
+     * context immediately and destroyed on the given executor.
+     *
+     * @param executor executor destroying the disposed instances, the calling thread is used if null
+     * @return number of disposed instances
+     */
+    public int disposeAll(final Executor executor) {
+        return disposeMatching(new BeanFilter() {
+            @Override
+            public boolean matches(final Bean<?> bean) {
+                return true;
+            }
+        }, executor);
+    }
+
+    /**
+     * Disposes the instances of all beans having the given type and qualifiers.
+     *
+     * @param type type of the singletons to be disposed
+     * @param qualifiers List of qualifier annotations
+     * @return number of disposed instances
+     */
+    public int dispose(final Class<?> type, final Annotation... qualifiers) {
+        return dispose((Executor) null, type, qualifiers);
+    }
+
+    /**
+     * Disposes the instances of all beans having the given type and qualifiers. The instances are removed
+     * from the context immediately and destroyed on the given executor. If an {@link InvalidationTransport}
+     * has been set, the invalidation is broadcast to the other nodes.
+     *
+     * @param executor executor destroying the disposed instances, the calling thread is used if null
+     * @param type type of the singletons to be disposed
+     * @param qualifiers List of qualifier annotations
+     * @return number of disposed instances
+     */
+    public int dispose(final Executor executor, final Class<?> type, final Annotation... qualifiers) {
+        final Set<Bean<?>> beans = beanManager.getBeans(type, qualifiers);
+        int disposed = disposeMatching(new BeanFilter() {
+            @Override
+            public boolean matches(final Bean<?> bean) {
+                return beans.contains(bean);
+            }
+        }, executor);
+        getContext().publishInvalidation(beans);
+        getProxiedContext().publishInvalidation(beans);
+        return disposed;
+    }
+
+    /**
+     * Disposes all instances of the beans of the given {@link Region} at once. The call only advances the epoch
+     * of the region, the instances are no longer returned afterwards and are destroyed in the background.
+     *
+     * @param region name of the region
+     * @return false if there is no bean in this region
+     */
+    public boolean disposeRegion(final String region) {
+        boolean disposed = getContext().disposeRegion(region);
+        return getProxiedContext().disposeRegion(region) || disposed;
+    }
+
+    /**
+     * Disposes the instances of all beans matching the given filter.
+     *
+     * @param filter filter selecting the beans whose instances are to be disposed
+     * @return number of disposed instances
+     */
+    public int disposeMatching(final BeanFilter filter) {
+        return disposeMatching(filter, null);
+    }
+
+    /**
+     * Disposes the instances of all beans matching the given filter. The instances are removed from the
+     * context immediately and destroyed on the given executor.
+     *
+     * @param filter filter selecting the beans whose instances are to be disposed
+     * @param executor executor destroying the disposed instances, the calling thread is used if null
+     * @return number of disposed instances
+     */
+    public int disposeMatching(final BeanFilter filter, final Executor executor) {
+        return getContext().disposeMatching(filter, executor) + getProxiedContext().disposeMatching(filter, executor);
+    }
+
+    /**
+     * Limits the number of instances in the {@link DisposableSingleton} context. Least recently used instances
+     * are evicted once the maximum is exceeded.
+     *
+     * @param maximumSize maximum number of instances
+     */
+    public void setMaximumSize(final long maximumSize) {
+        getContext().setMaximumSize(maximumSize);
+        getProxiedContext().setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Limits the total weight of the instances in the {@link DisposableSingleton} context. Least recently used
+     * instances are evicted once the maximum is exceeded.
+     *
+     * @param maximumWeight maximum total weight
+     * @param weigher weigher calculating the weight of an instance, each instance weighs 1 if null
+     */
+    public void setMaximumWeight(final long maximumWeight, final Weigher weigher) {
+        getContext().setMaximumWeight(maximumWeight, weigher);
+        getProxiedContext().setMaximumWeight(maximumWeight, weigher);
+    }
+
+    /**
+     * Sets the time the destruction of all instances of the {@link DisposableSingleton} context may take when
+     * the container shuts down. Defaults to 30 seconds.
+     *
+     * @param timeout shutdown timeout
+     * @param unit unit of the timeout
+     */
+    public void setShutdownTimeout(final long timeout, final TimeUnit unit) {
+        getContext().setShutdownTimeout(timeout, unit);
+        getProxiedContext().setShutdownTimeout(timeout, unit);
+    }
+
+    /**
+     * Sets the transport broadcasting invalidations by type to the other nodes of a cluster and receiving
+     * theirs. Invalidations are collected for {@value #DEFAULT_BATCH_WINDOW_MILLIS} milliseconds, so a burst of
+     * invalidations results in a single message per bean.
+     *
+     * @param transport the transport, null stops broadcasting
+     */
+    public void setInvalidationTransport(final InvalidationTransport transport) {
+        setInvalidationTransport(transport, DEFAULT_BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the transport broadcasting invalidations by type to the other nodes of a cluster and receiving
+     * theirs. Invalidations are collected for the given batch window before being published.
+     *
+     * @param transport the transport, null stops broadcasting
+     * @param batchWindow time invalidations are collected before being published
+     * @param unit unit of the batch window
+     */
+    public void setInvalidationTransport(final InvalidationTransport transport, final long batchWindow,
+                                         final TimeUnit unit) {
+        getContext().setInvalidationTransport(transport, batchWindow, unit);
+        getProxiedContext().setInvalidationTransport(transport, batchWindow, unit);
+    }
+
+    /**
+     * Sets the directory of the snapshots of {@link Snapshot} beans. The next creation of each of these beans
+     * restores its instance from its snapshot, if there is one of the same version. Snapshots are written to
+     * the directory when the container shuts down or {@link #writeSnapshots()} is called.
+     *
+     * @param directory snapshot directory, null disables snapshots
+     */
+    public void setSnapshotDirectory(final Path directory) {
+        getContext().setSnapshotDirectory(directory);
+        getProxiedContext().setSnapshotDirectory(directory);
+    }
+
+    /**
+     * Writes the snapshots of the current instances of all {@link Snapshot} beans.
+     *
+     * @return number of written snapshots
+     */
+    public int writeSnapshots() {
+        return getContext().writeSnapshots() + getProxiedContext().writeSnapshots();
+    }
+
+    /**
+     * Adds a listener notified about instances removed from the {@link DisposableSingleton} context.
+     *
+     * @param listener listener to be added
+     */
+    public void addRemovalListener(final RemovalListener listener) {
+        getContext().addRemovalListener(listener);
+        getProxiedContext().addRemovalListener(listener);
+    }
+
+    /**
+     * Removes a listener notified about instances removed from the {@link DisposableSingleton} context.
+     *
+     * @param listener listener to be removed
+     */
+    public void removeRemovalListener(final RemovalListener listener) {
+        getContext().removeRemovalListener(listener);
+        getProxiedContext().removeRemovalListener(listener);
     }
 
     /**
@@ -82,9 +369,58 @@ public class DisposableSingletonContext {
      * @return true/false
      */
     public <T> Boolean contains(final T singleton) {
-        DisposableSingletonContextImpl context =
-                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
-        return context.contains(singleton);
+        return getContext().contains(singleton);
+    }
+
+    /**
+     * Resolves the bean of the given type and qualifiers using the resolution cache of the context.
+     *
+     * @param <T> type of the bean
+     * @param type bean type
+     * @param qualifiers qualifiers of the bean
+     * @return the resolved bean or null if there is no such bean
+     */
+    private <T> Bean<T> resolve(final Class<T> type, final Annotation... qualifiers) {
+        return getContext().getResolutionCache().resolve(beanManager, type, qualifiers);
+    }
+
+    /**
+     * Returns the context of the {@link DisposableSingleton} scope. The context is looked up only once.
+     *
+     * @return the context implementation
+     */
+    private DisposableSingletonContextImpl getContext() {
+        if (context == null) {
+            context = (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+        }
+        return context;
+    }
+
+    /**
+     * Returns the context of the {@link ProxiedDisposableSingleton} scope. The context is looked up only once.
+     *
+     * @return the context implementation
+     */
+    private DisposableSingletonContextImpl getProxiedContext() {
+        if (proxiedContext == null) {
+            proxiedContext = (DisposableSingletonContextImpl) beanManager.getContext(ProxiedDisposableSingleton.class);
+        }
+        return proxiedContext;
+    }
+
+    /**
+     * Returns the context implementation of the given scope.
+     *
+     * @param scope scope of a bean
+     * @return the context implementation or null if the scope is none of the disposable singleton scopes
+     */
+    private DisposableSingletonContextImpl getContext(final Class<? extends Annotation> scope) {
+        if (DisposableSingleton.class.equals(scope)) {
+            return getContext();
+        } else if (ProxiedDisposableSingleton.class.equals(scope)) {
+            return getProxiedContext();
+        }
+        return null;
     }
 
 }
@@ -21,28 +21,188 @@ package net.phalanxx.cdiext.scope;
  */
 
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.enterprise.context.spi.Context;
 import javax.enterprise.context.spi.Contextual;
 import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.InjectionTarget;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Context implementation for the {@link DisposableSingleton} scope.
+ * <p/>
+ * Every bean gets its own {@link BeanSlot}. The beans registered during discovery get dense ids once the
+ * deployment has been validated, their slots are then found by probing an identity table instead of hashing
+ * the container's bean implementation. Looking up an existing instance is lock-free, the creation of
+ * an instance is serialized per bean so concurrent callers of a cold bean block until the first one has
+ * published its instance. Reentrant or circular creation is detected and reported by an
+ * {@link IllegalStateException} instead of a deadlock.
+ * <p/>
+ * Instances of beans annotated with {@link Expiration} are checked on access and expired by a timer wheel
+ * driven by a single maintenance thread shared by all beans.
+ * <p/>
+ * The context can be bounded by a maximum size or, using a {@link Weigher}, a maximum weight. When a new
+ * instance exceeds the bound the least recently used instances are evicted. Removed instances are reported
+ * to the registered {@link RemovalListener}s.
+ * <p/>
+ * Instances of {@link Reclaimable} beans are only softly or weakly referenced. Once collected they are
+ * created again on the next access, the references are drained from a queue to release the creational
+ * contexts of the collected instances. The creational contexts are held strongly, an instance is only
+ * collected if its creational context does not refer to it, which is not the case on Weld 1.1.
+ * <p/>
+ * Beans looked up while another bean of the scope is being created are recorded as its dependencies. On
+ * shutdown all instances are destroyed in parallel, dependents before their dependencies, within a
+ * configurable timeout.
+ * <p/>
+ * An instance can be refreshed: the replacement is created in the background while callers keep getting the
+ * current instance, then swapped in atomically. The replaced instance is destroyed after a grace period.
+ * <p/>
+ * Hits, misses, creations and removals are counted per bean without locking, see {@link BeanStatistics}.
+ * <p/>
+ * Callers can lease the current instance of a bean. A removed instance is only destroyed once all its leases
+ * have been closed, the last one hands the destruction over to the maintenance thread.
+ * <p/>
+ * Instances of {@link Snapshot} beans can be written to a snapshot directory. Once a directory has been set,
+ * the next creation of such a bean restores the instance from its snapshot if there is one of the same version.
+ * <p/>
+ * Invalidations by type can be broadcast to other nodes through an {@link InvalidationTransport}, the
+ * invalidations received from other nodes dispose the instances of the respective beans.
+ * <p/>
+ * Beans annotated with {@link Region} belong to a named region with an epoch. Disposing a region only advances
+ * its epoch, instances of older epochs are treated as absent right away and removed and destroyed by the
+ * maintenance thread.
  *
  * @author rbachlec
  */
 public class DisposableSingletonContextImpl implements Context {
 
+    /** Lease state of an instance which has been removed and must not be leased anymore. */
+    private static final int RETIRED = Integer.MIN_VALUE;
+
+    /** Number of buffered accesses after which a reading thread applies them to the access order. */
+    private static final int ACCESS_BUFFER_THRESHOLD = 64;
+
     private final Logger log = LoggerFactory.getLogger(DisposableSingletonContextImpl.class);
 
-    private final ConcurrentHashMap<Bean<?>, ContextualInstance<?>> beanStore = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Bean<?>, BeanSlot<?>> beanStore = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, RegionState> regions = new ConcurrentHashMap<>();
+
+    /** Identity table of the beans registered during discovery, empty until {@link #indexBeans()}. */
+    private volatile BeanIndex beanIndex = new BeanIndex(Collections.<BeanSlot<?>>emptyList());
+
+    /** Reverse index from the identity of the current instances to their slots. */
+    private final ConcurrentHashMap<InstanceKey, BeanSlot<?>> instanceIndex = new ConcurrentHashMap<>();
+
+    /** Slots the threads are currently waiting for, used to detect circular creation across threads. */
+    private final ConcurrentHashMap<Thread, BeanSlot<?>> waitingThreads = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService maintenanceExecutor =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("DisposableSingleton-maintenance"));
+
+    /** Creates the replacements of refreshed instances. */
+    private final ExecutorService refreshExecutor =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("DisposableSingleton-refresh"));
+
+    private final TimerWheel expirationWheel = new TimerWheel(maintenanceExecutor, 100, TimeUnit.MILLISECONDS, 512);
+
+    private final List<RemovalListener> removalListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong totalWeight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    /** Instances of a bounded context from the least to the most recently used, guarded by the eviction lock. */
+    private final LinkedHashMap<DisposableSingletonInstance<?>, Boolean> accessOrder =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Accesses, creations and removals of instances not applied to the access order yet. */
+    private final Queue<DisposableSingletonInstance<?>> accessBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedAccesses = new AtomicInteger();
+    private volatile long maximumWeight = Long.MAX_VALUE;
+    private volatile Weigher weigher;
+    private volatile boolean bounded;
+
+    /** Queue of the references to collected {@link Reclaimable} instances. */
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+    private final ConcurrentHashMap<Reference<?>, DisposableSingletonInstance<?>> reclaimableInstances =
+            new ConcurrentHashMap<>();
+    private final AtomicBoolean drainingScheduled = new AtomicBoolean();
+
+    /** Destructions of instances disposed by events, a burst of events is destroyed in a single pass. */
+    private final Queue<Runnable> pendingDestructions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean destructionsScheduled = new AtomicBoolean();
+
+    /** Destructions handed to the maintenance thread which have not run yet. */
+    private final Set<Runnable> deferredDestructions = Collections.newSetFromMap(
+            new ConcurrentHashMap<Runnable, Boolean>());
+
+    /** Slot whose instance is being created by the current thread. */
+    private final ThreadLocal<BeanSlot<?>> creatingSlot = new ThreadLocal<>();
+
+    /** Number of creations in progress, lookups only record dependencies while a creation is in progress. */
+    private final AtomicInteger creationsInProgress = new AtomicInteger();
+
+    private volatile long shutdownTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
+
+    private volatile BeanManager beanManager;
+    private final BeanResolutionCache resolutionCache = new BeanResolutionCache();
+    private volatile SnapshotStore snapshotStore;
+    private volatile InvalidationBus invalidationBus;
+
+    /** Disposes the beans invalidated by other nodes. */
+    private final InvalidationTransport.Receiver invalidationReceiver = new InvalidationTransport.Receiver() {
+        @Override
+        public void onInvalidation(final Set<String> beanKeys) {
+            int disposed = disposeMatching(new BeanFilter() {
+                @Override
+                public boolean matches(final Bean<?> bean) {
+                    BeanSlot<?> slot = beanStore.get(bean);
+                    return slot != null && beanKeys.contains(slot.key);
+                }
+            }, null);
+            log.debug("Disposed {} instances invalidated by another node.", disposed);
+        }
+    };
 
     /** {@inheritDoc} */
     @Override
@@ -56,27 +216,38 @@ public class DisposableSingletonContextImpl implements Context {
     public <T> T get(final Contextual<T> contextual, final CreationalContext<T> creationalContext) {
         Bean<T> bean = (Bean<T>) contextual;
 
-        T instance;
-        ContextualInstance<?> contextualInstance = beanStore.get(bean);
-        if (contextualInstance == null) {
-            log.debug("Creating instance of bean {}.", bean.toString());
-            instance = contextual.create(creationalContext);
-            contextualInstance = new DisposableSingletonInstance<>(instance, creationalContext);
-            beanStore.put(bean, contextualInstance);
-        } else {
-            log.debug("Found existing instance of bean {}.", bean.toString());
-            instance = (T) contextualInstance.getInstance();
+        BeanSlot<T> slot = getSlot(bean);
+        T instance = getCurrentInstance(slot);
+        if (instance != null) {
+            log.debug("Found existing instance of bean {}.", bean);
+            slot.counters.recordHit();
+            if (creationsInProgress.get() > 0) {
+                recordDependency(slot);
+            }
+            return instance;
         }
 
-        return instance;
+        slot.counters.recordMiss();
+        return create(slot, creationalContext);
     }
 
     /** {@inheritDoc} */
     @SuppressWarnings("unchecked")
     @Override
     public <T> T get(final Contextual<T> contextual) {
-        ContextualInstance<?> contextualInstance = beanStore.get(contextual);
-        return contextualInstance == null ? null : (T) contextualInstance.getInstance();
+        BeanSlot<?> slot = beanIndex.get(contextual);
+        if (slot == null) {
+            slot = beanStore.get(contextual);
+            if (slot == null) {
+                return null;
+            }
+        }
+
+        T instance = (T) getCurrentInstance(slot);
+        if (instance != null) {
+            slot.counters.recordHit();
+        }
+        return instance;
     }
 
     /** {@inheritDoc} */
@@ -92,22 +263,11 @@ public class DisposableSingletonContextImpl implements Context {
      * @param instance instance to be disposed
      */
     protected <T> void dispose(final T instance) {
-        if (!contains(instance)) {
+        BeanSlot<?> slot = instanceIndex.get(new InstanceKey(instance));
+        if (slot == null || !disposeInstance(slot, instance)) {
             throw new IllegalArgumentException("The given instance could not be found in " +
                                                "the DisposableSingletonContext.");
         }
-
-        for (Map.Entry<Bean<?>, ContextualInstance<?>> entry : beanStore.entrySet()) {
-            Bean<?> bean = entry.getKey();
-            ContextualInstance<? extends Object> contextualInstance = entry.getValue();
-
-            if (contextualInstance.getInstance() == instance) {
-                log.debug("Disposing instance of bean {}.", bean.toString());
-                contextualInstance.getCreationalContext().release();
-                beanStore.remove(bean);
-                break;
-            }
-        }
     }
 
     /**
@@ -118,34 +278,1590 @@ public class DisposableSingletonContextImpl implements Context {
      * @return true/false
      */
     protected <T> Boolean contains(final T instance) {
-        Boolean contains = false;
-        for (Map.Entry<Bean<?>, ContextualInstance<?>> entry : beanStore.entrySet()) {
-            ContextualInstance<? extends Object> contextualInstance = entry.getValue();
-            if (contextualInstance.getInstance() == instance) {
-                contains = true;
+        BeanSlot<?> slot = instanceIndex.get(new InstanceKey(instance));
+        if (slot == null) {
+            return false;
+        }
+
+        DisposableSingletonInstance<?> contextualInstance = slot.current.get();
+        return contextualInstance != null && contextualInstance.getInstance() == instance
+                && !contextualInstance.isStale();
+    }
+
+    /**
+     * Disposes all instances of the given region. The instances are no longer returned once this method
+     * returns, they are removed and destroyed by the maintenance thread.
+     *
+     * @param region name of the region
+     * @return false if the region is unknown
+     */
+    protected boolean disposeRegion(final String region) {
+        final RegionState regionState = regions.get(region);
+        if (regionState == null) {
+            return false;
+        }
+
+        final long epoch = regionState.epoch.incrementAndGet();
+        log.debug("Disposing region {}, new epoch {}.", region, epoch);
+        destroyInBackground(new Runnable() {
+            @Override
+            public void run() {
+                for (BeanSlot<?> slot : regionState.slots) {
+                    DisposableSingletonInstance<?> contextualInstance = slot.current.get();
+                    if (contextualInstance != null && contextualInstance.epoch - epoch < 0) {
+                        Runnable destruction = removeCurrent(contextualInstance, RemovalCause.EXPLICIT);
+                        if (destruction != null) {
+                            destruction.run();
+                        }
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Removes the instances of all beans matching the given filter from the {@link DisposableSingleton}
+     * context. The instances are removed before this method returns. They are destroyed by tasks run on the
+     * given executor, or by the calling thread if no executor is given.
+     *
+     * @param filter filter selecting the beans whose instances are to be disposed
+     * @param executor executor destroying the removed instances, may be null
+     * @return number of disposed instances
+     */
+    protected int disposeMatching(final BeanFilter filter, final Executor executor) {
+        List<Runnable> destructions = new ArrayList<>();
+        for (BeanSlot<?> slot : beanStore.values()) {
+            if (filter.matches(slot.bean)) {
+                Runnable destruction = removeCurrent(slot.current.get(), RemovalCause.EXPLICIT);
+                if (destruction != null) {
+                    destructions.add(destruction);
+                }
             }
         }
 
-        return contains;
+        log.debug("Disposing {} instances.", destructions.size());
+        for (Runnable destruction : destructions) {
+            if (executor == null) {
+                destruction.run();
+            } else {
+                executor.execute(destruction);
+            }
+        }
+        return destructions.size();
     }
 
     /**
-     * A container class for disposable singleton instances.
+     * Disposes the instances of the given beans on behalf of an event observed by a {@link DisposingObserver}.
+     * The instances are removed right away, their destruction is queued and the queue is drained by a single
+     * task on the maintenance thread, so a burst of events results in one destruction pass.
      *
-     * @param <T> type of instance in container
+     * @param beans beans whose instances are to be disposed
+     * @return number of disposed instances
      */
-    private static class DisposableSingletonInstance<T> implements ContextualInstance<T> {
-        private final T instance;
-        private final CreationalContext<T> creationalContext;
+    int disposeOnEvent(final Collection<Bean<?>> beans) {
+        int disposed = 0;
+        for (Bean<?> bean : beans) {
+            BeanSlot<?> slot = beanIndex.get(bean);
+            if (slot == null) {
+                slot = beanStore.get(bean);
+            }
+            Runnable destruction = slot == null ? null : removeCurrent(slot.current.get(), RemovalCause.EXPLICIT);
+            if (destruction != null) {
+                pendingDestructions.add(destruction);
+                disposed++;
+            }
+        }
 
-        public DisposableSingletonInstance(final T instance, final CreationalContext<T> creationalContext) {
-            this.instance = instance;
-            this.creationalContext = creationalContext;
+        if (disposed > 0 && destructionsScheduled.compareAndSet(false, true)) {
+            destroyInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    destructionsScheduled.set(false);
+                    for (Runnable destruction = pendingDestructions.poll(); destruction != null;
+                            destruction = pendingDestructions.poll()) {
+                        destruction.run();
+                    }
+                }
+            });
         }
+        return disposed;
+    }
 
-        @Override
-        public T getInstance() {
+    /**
+     * Registers a bean discovered by the container. The settings of the bean are read from the given
+     * annotated type or producer method.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param annotated annotated type or member defining the bean
+     */
+    <T> void register(final Bean<T> bean, final Annotated annotated) {
+        BeanSlot<T> slot = newSlot(bean, annotated);
+        if (beanStore.putIfAbsent(bean, slot) == null && slot.region != null) {
+            slot.region.slots.add(slot);
+        }
+    }
+
+    /**
+     * Creates the slot of a bean and assigns it to its region.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param annotated annotated type or member defining the bean, may be null
+     * @return new slot
+     */
+    private <T> BeanSlot<T> newSlot(final Bean<T> bean, final Annotated annotated) {
+        Region region = BeanSlot.getAnnotation(bean, annotated, Region.class);
+        if (region == null) {
+            return new BeanSlot<>(bean, annotated, null);
+        }
+
+        RegionState regionState = regions.get(region.value());
+        if (regionState == null) {
+            RegionState newRegionState = new RegionState();
+            regionState = regions.putIfAbsent(region.value(), newRegionState);
+            if (regionState == null) {
+                regionState = newRegionState;
+            }
+        }
+        return new BeanSlot<>(bean, annotated, regionState);
+    }
+
+    /**
+     * Assigns dense ids to the beans registered so far and publishes the identity table used to look up their
+     * slots. Called once the deployment has been validated, beans registered later are found by hashing.
+     */
+    void indexBeans() {
+        beanIndex = new BeanIndex(new ArrayList<>(beanStore.values()));
+    }
+
+    /**
+     * Checks if the slot of the given bean is looked up through the identity table rather than by hashing.
+     *
+     * @param bean the bean
+     * @return true if the bean has been indexed
+     */
+    boolean isIndexed(final Bean<?> bean) {
+        return beanIndex.get(bean) != null;
+    }
+
+    /**
+     * Returns the slot of the given bean and registers a new one if the bean is unknown so far. The settings of
+     * beans not registered during discovery are read from the bean class.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @return slot of the bean
+     */
+    @SuppressWarnings("unchecked")
+    private <T> BeanSlot<T> getSlot(final Bean<T> bean) {
+        BeanSlot<T> slot = (BeanSlot<T>) beanIndex.get(bean);
+        if (slot != null) {
+            return slot;
+        }
+
+        slot = (BeanSlot<T>) beanStore.get(bean);
+        if (slot == null) {
+            BeanSlot<T> newSlot = newSlot(bean, null);
+            slot = (BeanSlot<T>) beanStore.putIfAbsent(bean, newSlot);
+            if (slot == null) {
+                slot = newSlot;
+                if (slot.region != null) {
+                    slot.region.slots.add(slot);
+                }
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Creates and publishes the instance of the given slot unless another thread has already done so.
+     * Only one thread creates the instance of a bean, all other threads wait until it has been published.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param creationalContext creational context to create the instance with
+     * @return the published instance
+     */
+    private <T> T create(final BeanSlot<T> slot, final CreationalContext<T> creationalContext) {
+        Thread currentThread = Thread.currentThread();
+        if (slot.creator == currentThread) {
+            throw new IllegalStateException("Circular creation of bean " + slot.bean + " detected.");
+        }
+
+        drainReferenceQueue();
+
+        T instance;
+        DisposableSingletonInstance<T> contextualInstance;
+        awaitCreationLock(slot, currentThread);
+        try {
+            instance = getCurrentInstance(slot);
+            if (instance == null) {
+                log.debug("Creating instance of bean {}.", slot.bean);
+                slot.creator = currentThread;
+                try {
+                    instance = instantiate(slot, creationalContext);
+                    contextualInstance = newInstance(slot, instance, creationalContext);
+                    slot.current.set(contextualInstance);
+                    link(contextualInstance);
+                } finally {
+                    slot.creator = null;
+                }
+                track(contextualInstance);
+            } else {
+                log.debug("Found instance of bean {} created by another thread.", slot.bean);
+                contextualInstance = null;
+            }
+        } finally {
+            slot.creationLock.unlock();
+        }
+
+        recordDependency(slot);
+        if (bounded && contextualInstance != null) {
+            evict(contextualInstance);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a new instance of the bean of the given slot, recording the beans looked up meanwhile as its
+     * dependencies.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param creationalContext creational context of the new instance
+     * @return new instance
+     */
+    private <T> T instantiate(final BeanSlot<T> slot, final CreationalContext<T> creationalContext) {
+        BeanSlot<?> dependent = creatingSlot.get();
+        creatingSlot.set(slot);
+        creationsInProgress.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            T instance = restore(slot, creationalContext);
+            if (instance == null) {
+                instance = slot.bean.create(creationalContext);
+            }
+            slot.counters.recordCreation(System.nanoTime() - start);
+            return instance;
+        } finally {
+            creationsInProgress.decrementAndGet();
+            if (dependent == null) {
+                creatingSlot.remove();
+            } else {
+                creatingSlot.set(dependent);
+            }
+        }
+    }
+
+    /**
+     * Restores the instance of a {@link Snapshot} bean if it has not been created since the snapshot directory
+     * has been set. Restored instances of managed beans are injected again.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param creationalContext creational context of the new instance
+     * @return restored instance or null if it has to be created
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T restore(final BeanSlot<T> slot, final CreationalContext<T> creationalContext) {
+        SnapshotStore store = snapshotStore;
+        if (!slot.restorable || store == null) {
+            return null;
+        }
+        slot.restorable = false;
+
+        try {
+            T instance = (T) store.read(slot.bean, slot.snapshotVersion);
+            if (instance == null) {
+                log.debug("No snapshot of bean {} found.", slot.bean);
+                return null;
+            }
+
+            BeanManager manager = beanManager;
+            if (slot.managedBean && manager != null && slot.bean.getBeanClass().isInstance(instance)) {
+                Class<T> beanClass = (Class<T>) slot.bean.getBeanClass();
+                InjectionTarget<T> injectionTarget =
+                        manager.createInjectionTarget(manager.createAnnotatedType(beanClass));
+                injectionTarget.inject(instance, creationalContext);
+            }
+            log.debug("Restored instance of bean {} from snapshot.", slot.bean);
             return instance;
+        } catch (IOException | ClassNotFoundException ex) {
+            log.warn("Could not restore snapshot of bean " + slot.bean + ", creating a new instance.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a new instance, weighing it with the current {@link Weigher}.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param instance the new instance
+     * @param creationalContext creational context of the instance
+     * @return wrapped instance
+     */
+    private <T> DisposableSingletonInstance<T> newInstance(final BeanSlot<T> slot, final T instance,
+                                                           final CreationalContext<T> creationalContext) {
+        Weigher currentWeigher = weigher;
+        long weight = currentWeigher == null ? 1 : currentWeigher.weigh(slot.bean, instance);
+        return new DisposableSingletonInstance<>(slot, instance, creationalContext, weight);
+    }
+
+    /**
+     * Schedules the expiration of a new current instance and tracks its reference if it is reclaimable.
+     *
+     * @param contextualInstance the new current instance
+     */
+    private void track(final DisposableSingletonInstance<?> contextualInstance) {
+        if (contextualInstance.slot.expiring) {
+            expirationWheel.schedule(contextualInstance, contextualInstance.getDeadline());
+        }
+        if (contextualInstance.reference != null) {
+            trackReclaimable(contextualInstance);
+        }
+    }
+
+    /**
+     * Refreshes the instance of the given bean. The replacement is created in the background while the current
+     * instance is still returned, then it is swapped in. The replaced instance is destroyed after the given
+     * grace period. If there is no current instance the replacement simply becomes the current one. Failures
+     * are logged and reported by the returned future.
+     *
+     * @param <T> type of the bean
+     * @param bean bean to be refreshed
+     * @param creationalContext creational context of the replacement
+     * @param gracePeriod time the replaced instance stays usable by callers still holding it
+     * @param unit unit of the grace period
+     * @return future providing the replacement
+     */
+    protected <T> Future<T> refresh(final Bean<T> bean, final CreationalContext<T> creationalContext,
+                                    final long gracePeriod, final TimeUnit unit) {
+        final BeanSlot<T> slot = getSlot(bean);
+        final long gracePeriodNanos = unit.toNanos(gracePeriod);
+        return refreshExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                try {
+                    return replace(slot, creationalContext, gracePeriodNanos);
+                } catch (RuntimeException ex) {
+                    log.error("Refreshing instance of bean " + slot.bean + " failed.", ex);
+                    throw ex;
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks if there is a current instance of the given bean.
+     *
+     * @param bean the bean
+     * @return true if an instance has been created and not been removed yet
+     */
+    boolean hasInstance(final Bean<?> bean) {
+        BeanSlot<?> slot = beanIndex.get(bean);
+        if (slot == null) {
+            slot = beanStore.get(bean);
+        }
+        return slot != null && slot.current.get() != null;
+    }
+
+    /**
+     * Creates a new instance of the bean of the given slot and swaps it in as current instance.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param creationalContext creational context of the replacement
+     * @param gracePeriodNanos nanoseconds to wait before the replaced instance is destroyed
+     * @return the replacement
+     */
+    private <T> T replace(final BeanSlot<T> slot, final CreationalContext<T> creationalContext,
+                          final long gracePeriodNanos) {
+        log.debug("Refreshing instance of bean {}.", slot.bean);
+        T instance;
+        try {
+            instance = instantiate(slot, creationalContext);
+        } catch (RuntimeException ex) {
+            creationalContext.release();
+            throw ex;
+        }
+        DisposableSingletonInstance<T> replacement = newInstance(slot, instance, creationalContext);
+
+        DisposableSingletonInstance<T> replaced;
+        slot.creationLock.lock();
+        try {
+            replaced = slot.current.getAndSet(replacement);
+            if (replaced != null) {
+                unlink(replaced);
+            }
+            link(replacement);
+        } finally {
+            slot.creationLock.unlock();
+        }
+        track(replacement);
+
+        if (replaced != null) {
+            destroyLater(destruction(slot, replaced, RemovalCause.REPLACED), gracePeriodNanos);
+        }
+        if (bounded) {
+            evict(replacement);
+        }
+        return instance;
+    }
+
+    /**
+     * Leases the current instance of the given bean, creating it if necessary. The instance is not destroyed
+     * before the lease has been closed, even if it is removed from the context meanwhile. A creational context
+     * is only created if there is no current instance, a new one for every creation attempt.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param manager bean manager creating the creational contexts
+     * @return lease of the current instance
+     */
+    protected <T> SingletonLease<T> acquire(final Bean<T> bean, final BeanManager manager) {
+        BeanSlot<T> slot = getSlot(bean);
+        while (true) {
+            T instance = get(bean);
+            if (instance == null) {
+                instance = get(bean, manager.createCreationalContext(bean));
+            }
+            DisposableSingletonInstance<T> contextualInstance = slot.current.get();
+            if (contextualInstance != null && contextualInstance.getInstance() == instance
+                    && contextualInstance.tryAcquire()) {
+                return new InstanceLease<>(contextualInstance, instance);
+            }
+            // the instance has been removed right after the lookup
+        }
+    }
+
+    /**
+     * Runs the given destruction on the maintenance thread, or on the calling thread if the context has been
+     * shut down.
+     *
+     * @param destruction destruction to be run, may be null
+     */
+    private void destroyInBackground(final Runnable destruction) {
+        if (destruction != null) {
+            destroyLater(destruction, 0);
+        }
+    }
+
+    /**
+     * Runs the given destruction on the maintenance thread after the given delay, or on the calling thread if
+     * the context has been shut down. The destruction is tracked until it has run, so a shutdown runs it even if
+     * the delay has not elapsed yet.
+     *
+     * @param destruction destruction to be run
+     * @param delayNanos nanoseconds to wait before the destruction is run
+     */
+    private void destroyLater(final Runnable destruction, final long delayNanos) {
+        Runnable deferredDestruction = new Runnable() {
+            @Override
+            public void run() {
+                if (deferredDestructions.remove(this)) {
+                    destruction.run();
+                }
+            }
+        };
+        deferredDestructions.add(deferredDestruction);
+        try {
+            maintenanceExecutor.schedule(deferredDestruction, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            deferredDestruction.run();
+        }
+    }
+
+    /**
+     * Records the given slot as dependency of the bean the current thread is creating, if any.
+     *
+     * @param slot slot of the looked up bean
+     */
+    private void recordDependency(final BeanSlot<?> slot) {
+        BeanSlot<?> dependent = creatingSlot.get();
+        if (dependent != null && dependent != slot) {
+            dependent.dependencies.add(slot);
+        }
+    }
+
+    /**
+     * Returns the current instance of the given slot. Expiring instances are checked and disposed if they have
+     * expired, the access is recorded if needed for expiration or eviction. Collected instances are
+     * reclaimed.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @return current instance or null if there is none
+     */
+    private <T> T getCurrentInstance(final BeanSlot<T> slot) {
+        DisposableSingletonInstance<T> contextualInstance = slot.current.get();
+        if (contextualInstance == null) {
+            return null;
+        }
+
+        T instance = contextualInstance.getInstance();
+        if (instance == null) {
+            reclaim(contextualInstance);
+            return null;
+        }
+        if (contextualInstance.isStale()) {
+            destroyInBackground(removeCurrent(contextualInstance, RemovalCause.EXPLICIT));
+            return null;
+        }
+        if ((slot.expiring || bounded) && !contextualInstance.access()) {
+            return null;
+        }
+        if (bounded) {
+            recordAccess(contextualInstance);
+        }
+        return instance;
+    }
+
+    /**
+     * Tracks the reference of a {@link Reclaimable} instance and makes sure the reference queue is drained
+     * regularly.
+     *
+     * @param contextualInstance reclaimable instance
+     */
+    private void trackReclaimable(final DisposableSingletonInstance<?> contextualInstance) {
+        reclaimableInstances.put(contextualInstance.reference, contextualInstance);
+        if (drainingScheduled.compareAndSet(false, true)) {
+            maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    drainReferenceQueue();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Reclaims all instances whose references have been cleared by the garbage collector.
+     */
+    private void drainReferenceQueue() {
+        for (Reference<?> reference = referenceQueue.poll(); reference != null; reference = referenceQueue.poll()) {
+            DisposableSingletonInstance<?> contextualInstance = reclaimableInstances.get(reference);
+            if (contextualInstance != null) {
+                reclaim(contextualInstance);
+            }
+        }
+    }
+
+    /**
+     * Removes a collected instance from its slot and releases its creational context.
+     *
+     * @param <T> type of the bean
+     * @param contextualInstance collected instance
+     */
+    private <T> void reclaim(final DisposableSingletonInstance<T> contextualInstance) {
+        if (remove(contextualInstance.slot, contextualInstance)) {
+            log.debug("Instance of bean {} has been collected.", contextualInstance.slot.bean);
+            destruction(contextualInstance.slot, contextualInstance, RemovalCause.COLLECTED).run();
+        }
+    }
+
+    /**
+     * Sets the maximum number of instances in the context. Least recently used instances are evicted once the
+     * maximum is exceeded.
+     *
+     * @param maximumSize maximum number of instances
+     */
+    protected void setMaximumSize(final long maximumSize) {
+        setMaximumWeight(maximumSize, null);
+    }
+
+    /**
+     * Sets the maximum total weight of the instances in the context. Least recently used instances are evicted
+     * once the maximum is exceeded. The weigher is applied to instances created from now on, existing
+     * instances keep their weight.
+     *
+     * @param maximumWeight maximum total weight
+     * @param weigher weigher calculating the weight of an instance, each instance weighs 1 if null
+     */
+    protected void setMaximumWeight(final long maximumWeight, final Weigher weigher) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight must not be negative.");
+        }
+
+        evictionLock.lock();
+        try {
+            boolean wasBounded = bounded;
+            this.weigher = weigher;
+            this.maximumWeight = maximumWeight;
+            this.bounded = maximumWeight != Long.MAX_VALUE;
+            if (bounded && !wasBounded) {
+                for (BeanSlot<?> slot : beanStore.values()) {
+                    DisposableSingletonInstance<?> contextualInstance = slot.current.get();
+                    if (contextualInstance != null) {
+                        accessOrder.put(contextualInstance, Boolean.TRUE);
+                    }
+                }
+            } else if (!bounded) {
+                accessOrder.clear();
+                accessBuffer.clear();
+                bufferedAccesses.set(0);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        if (bounded) {
+            evict(null);
+        }
+    }
+
+    /**
+     * Sets the time the destruction of all instances may take on shutdown.
+     *
+     * @param timeout shutdown timeout
+     * @param unit unit of the timeout
+     */
+    protected void setShutdownTimeout(final long timeout, final TimeUnit unit) {
+        this.shutdownTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Writes the snapshots, destroys all instances of the context and stops its background work. Independent
+     * instances are destroyed in parallel, dependents before their dependencies. Instances which have not been
+     * destroyed when the shutdown timeout elapses are abandoned.
+     */
+    void shutdown() {
+        setInvalidationTransport(null, 0, TimeUnit.NANOSECONDS);
+        writeSnapshots();
+        maintenanceExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+
+        // replaced and disposed instances whose destruction has been dropped by the maintenance executor
+        for (Runnable deferredDestruction : new ArrayList<>(deferredDestructions)) {
+            deferredDestruction.run();
+        }
+        for (Runnable destruction = pendingDestructions.poll(); destruction != null;
+                destruction = pendingDestructions.poll()) {
+            destruction.run();
+        }
+
+        Map<BeanSlot<?>, Runnable> destructions = new HashMap<>();
+        for (BeanSlot<?> slot : beanStore.values()) {
+            Runnable destruction = removeCurrent(slot.current.get(), RemovalCause.SHUTDOWN);
+            if (destruction != null) {
+                destructions.put(slot, destruction);
+            }
+        }
+
+        if (!destructions.isEmpty()) {
+            log.debug("Destroying {} instances on shutdown.", destructions.size());
+            new OrderedDestruction(destructions).run(shutdownTimeoutNanos);
+        }
+    }
+
+    /**
+     * Returns the cache of the beans resolved by the {@link DisposableSingletonContext} helper.
+     *
+     * @return the resolution cache
+     */
+    BeanResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
+    /**
+     * Sets the bean manager used to inject restored instances.
+     *
+     * @param manager the bean manager
+     */
+    void setBeanManager(final BeanManager manager) {
+        this.beanManager = manager;
+    }
+
+    /**
+     * Sets the directory of the snapshots of {@link Snapshot} beans. The next creation of each of these beans
+     * restores its instance from the snapshot.
+     *
+     * @param directory snapshot directory, null disables snapshots
+     */
+    protected void setSnapshotDirectory(final Path directory) {
+        snapshotStore = directory == null ? null : new SnapshotStore(directory);
+        for (BeanSlot<?> slot : beanStore.values()) {
+            slot.restorable = directory != null && slot.snapshotVersion != null;
+        }
+    }
+
+    /**
+     * Writes the snapshots of the current instances of all {@link Snapshot} beans. Failures are logged only.
+     *
+     * @return number of written snapshots
+     */
+    protected int writeSnapshots() {
+        SnapshotStore store = snapshotStore;
+        if (store == null) {
+            return 0;
+        }
+
+        int written = 0;
+        for (BeanSlot<?> slot : beanStore.values()) {
+            DisposableSingletonInstance<?> contextualInstance = slot.current.get();
+            Object instance = contextualInstance == null ? null : contextualInstance.getInstance();
+            if (slot.snapshotVersion != null && instance != null) {
+                try {
+                    store.write(slot.bean, slot.snapshotVersion, instance);
+                    written++;
+                } catch (IOException ex) {
+                    log.warn("Could not write snapshot of bean " + slot.bean + ".", ex);
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Sets the transport broadcasting invalidations to other nodes and receiving theirs. Invalidations are
+     * collected for the given batch window before being published.
+     *
+     * @param transport the transport, null stops broadcasting
+     * @param batchWindow time invalidations are collected before being published
+     * @param unit unit of the batch window
+     */
+    protected void setInvalidationTransport(final InvalidationTransport transport, final long batchWindow,
+                                            final TimeUnit unit) {
+        InvalidationBus previousBus = invalidationBus;
+        invalidationBus = transport == null ? null
+                : new InvalidationBus(transport, invalidationReceiver, maintenanceExecutor, unit.toNanos(batchWindow));
+        if (previousBus != null) {
+            previousBus.close();
+        }
+    }
+
+    /**
+     * Broadcasts the invalidation of the given beans of this context's scope to the other nodes.
+     *
+     * @param beans invalidated beans, beans of other scopes are ignored
+     */
+    protected void publishInvalidation(final Set<Bean<?>> beans) {
+        InvalidationBus bus = invalidationBus;
+        if (bus != null) {
+            for (Bean<?> bean : beans) {
+                if (getScope().equals(bean.getScope())) {
+                    bus.publish(getSlot(bean).key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of all beans known to the context.
+     *
+     * @return statistics per bean
+     */
+    List<BeanStatistics> getStatistics() {
+        List<BeanStatistics> statistics = new ArrayList<>();
+        for (BeanSlot<?> slot : beanStore.values()) {
+            statistics.add(slot.counters.snapshot(slot.bean.toString(), slot.current.get() != null));
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the number of beans currently having an instance in the context.
+     *
+     * @return number of live instances
+     */
+    int getLiveInstances() {
+        int liveInstances = 0;
+        for (BeanSlot<?> slot : beanStore.values()) {
+            if (slot.current.get() != null) {
+                liveInstances++;
+            }
+        }
+        return liveInstances;
+    }
+
+    /**
+     * Returns the total weight of the instances in the context.
+     *
+     * @return total weight
+     */
+    long getTotalWeight() {
+        return totalWeight.get();
+    }
+
+    /**
+     * Adds a listener notified about removed instances.
+     *
+     * @param listener listener to be added
+     */
+    protected void addRemovalListener(final RemovalListener listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener notified about removed instances.
+     *
+     * @param listener listener to be removed
+     */
+    protected void removeRemovalListener(final RemovalListener listener) {
+        removalListeners.remove(listener);
+    }
+
+    /**
+     * Evicts the least recently used instances until the total weight does not exceed the maximum anymore. The
+     * evicted instances are destroyed by the calling thread.
+     *
+     * @param created newly created instance which is not evicted, may be null
+     */
+    private void evict(final DisposableSingletonInstance<?> created) {
+        List<Runnable> destructions = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            drainAccessBuffer();
+            if (created != null && created.slot.current.get() == created) {
+                accessOrder.put(created, Boolean.TRUE);
+            }
+
+            Iterator<DisposableSingletonInstance<?>> candidates = accessOrder.keySet().iterator();
+            while (totalWeight.get() > maximumWeight && candidates.hasNext()) {
+                DisposableSingletonInstance<?> victim = candidates.next();
+                if (victim == created) {
+                    continue;
+                }
+
+                candidates.remove();
+                Runnable destruction = removeCurrent(victim, RemovalCause.SIZE);
+                if (destruction != null) {
+                    destructions.add(destruction);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        for (Runnable destruction : destructions) {
+            destruction.run();
+        }
+    }
+
+    /**
+     * Buffers an access of an instance of a bounded context. Once enough accesses have been buffered they are
+     * applied to the access order, unless another thread holds the eviction lock.
+     *
+     * @param contextualInstance the accessed instance
+     */
+    private void recordAccess(final DisposableSingletonInstance<?> contextualInstance) {
+        accessBuffer.offer(contextualInstance);
+        if (bufferedAccesses.incrementAndGet() >= ACCESS_BUFFER_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainAccessBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the buffered accesses to the access order. Current instances are moved to the most recently used
+     * end, removed instances are dropped. Must be called holding the eviction lock.
+     */
+    private void drainAccessBuffer() {
+        DisposableSingletonInstance<?> contextualInstance;
+        while ((contextualInstance = accessBuffer.poll()) != null) {
+            bufferedAccesses.decrementAndGet();
+            if (contextualInstance.slot.current.get() == contextualInstance) {
+                accessOrder.put(contextualInstance, Boolean.TRUE);
+            } else {
+                accessOrder.remove(contextualInstance);
+            }
+        }
+    }
+
+    /**
+     * Acquires the creation lock of the given slot. Before blocking, the chain of threads the creator of the
+     * slot is waiting for is followed. If it leads back to the current thread the creation is circular and
+     * would never finish.
+     *
+     * @param slot slot whose creation lock is to be acquired
+     * @param currentThread the current thread
+     */
+    private void awaitCreationLock(final BeanSlot<?> slot, final Thread currentThread) {
+        if (slot.creationLock.tryLock()) {
+            return;
+        }
+
+        waitingThreads.put(currentThread, slot);
+        try {
+            BeanSlot<?> waitedFor = slot;
+            for (int i = 0; waitedFor != null && i <= waitingThreads.size(); i++) {
+                Thread creator = waitedFor.creator;
+                if (creator == currentThread) {
+                    throw new IllegalStateException("Circular creation of bean " + slot.bean + " detected.");
+                }
+                waitedFor = creator == null ? null : waitingThreads.get(creator);
+            }
+
+            slot.creationLock.lockInterruptibly();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for creation of bean " + slot.bean + ".",
+                                            ex);
+        } finally {
+            waitingThreads.remove(currentThread);
+        }
+    }
+
+    /**
+     * Disposes the current instance of the given slot if it is the given instance.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param instance instance to be disposed
+     * @return true if the given instance is the current instance of the slot
+     */
+    private <T> boolean disposeInstance(final BeanSlot<T> slot, final Object instance) {
+        DisposableSingletonInstance<T> contextualInstance = slot.current.get();
+        if (contextualInstance == null || contextualInstance.getInstance() != instance) {
+            return false;
+        }
+
+        if (remove(slot, contextualInstance)) {
+            notifyRemoval(contextualInstance, RemovalCause.EXPLICIT);
+            destroy(slot, contextualInstance);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the given instance from its slot and returns a task destroying it.
+     *
+     * @param <T> type of the bean
+     * @param contextualInstance instance to be removed, may be null
+     * @param cause why the instance is removed
+     * @return destruction task or null if the instance is not the current one of its slot
+     */
+    private <T> Runnable removeCurrent(final DisposableSingletonInstance<T> contextualInstance,
+                                       final RemovalCause cause) {
+        if (contextualInstance == null || !remove(contextualInstance.slot, contextualInstance)) {
+            return null;
+        }
+
+        return destruction(contextualInstance.slot, contextualInstance, cause);
+    }
+
+    /**
+     * Returns a task destroying the given instance which has already been removed from its slot. Failures are
+     * logged.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param contextualInstance instance to be destroyed
+     * @param cause why the instance has been removed
+     * @return destruction task
+     */
+    private <T> Runnable destruction(final BeanSlot<T> slot, final DisposableSingletonInstance<T> contextualInstance,
+                                     final RemovalCause cause) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    notifyRemoval(contextualInstance, cause);
+                    destroy(slot, contextualInstance);
+                } catch (RuntimeException ex) {
+                    log.error("Destroying instance of bean " + slot.bean + " failed.", ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * Removes the given instance from its slot and the instance index if it is still the current one.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param contextualInstance instance to be removed
+     * @return true if the instance has been removed by this call
+     */
+    private <T> boolean remove(final BeanSlot<T> slot, final DisposableSingletonInstance<T> contextualInstance) {
+        if (!slot.current.compareAndSet(contextualInstance, null)) {
+            return false;
+        }
+
+        unlink(contextualInstance);
+        return true;
+    }
+
+    /**
+     * Adds a new current instance to the instance index and the total weight.
+     *
+     * @param contextualInstance the new current instance
+     */
+    private void link(final DisposableSingletonInstance<?> contextualInstance) {
+        instanceIndex.put(contextualInstance.indexKey, contextualInstance.slot);
+        totalWeight.addAndGet(contextualInstance.weight);
+    }
+
+    /**
+     * Removes an instance which is no longer the current one from the instance index, the total weight and the
+     * tracked reclaimable instances.
+     *
+     * @param contextualInstance the removed instance
+     */
+    private void unlink(final DisposableSingletonInstance<?> contextualInstance) {
+        instanceIndex.remove(contextualInstance.indexKey, contextualInstance.slot);
+        totalWeight.addAndGet(-contextualInstance.weight);
+        if (contextualInstance.reference != null) {
+            reclaimableInstances.remove(contextualInstance.reference);
+        }
+        if (bounded) {
+            // applied to the access order later, the eviction lock may be held by the current thread
+            accessBuffer.offer(contextualInstance);
+            bufferedAccesses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Notifies the removal listeners about a removed instance. Failing listeners are logged.
+     *
+     * @param contextualInstance the removed instance
+     * @param cause why the instance has been removed
+     */
+    private void notifyRemoval(final DisposableSingletonInstance<?> contextualInstance, final RemovalCause cause) {
+        contextualInstance.slot.counters.recordRemoval(cause);
+        for (RemovalListener listener : removalListeners) {
+            try {
+                listener.onRemoval(contextualInstance.slot.bean, contextualInstance.getInstance(), cause);
+            } catch (RuntimeException ex) {
+                log.error("Removal listener " + listener + " failed.", ex);
+            }
+        }
+    }
+
+    /**
+     * Destroys an instance which has already been removed from its slot.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param contextualInstance instance to be destroyed
+     */
+    private <T> void destroy(final BeanSlot<T> slot, final DisposableSingletonInstance<T> contextualInstance) {
+        if (!contextualInstance.retire()) {
+            log.debug("Deferring destruction of leased instance of bean {}.", slot.bean);
+            return;
+        }
+        destroyRetired(slot, contextualInstance);
+    }
+
+    /**
+     * Destroys a removed instance which has no open leases anymore.
+     *
+     * @param <T> type of the bean
+     * @param slot slot of the bean
+     * @param contextualInstance instance to be destroyed
+     */
+    private <T> void destroyRetired(final BeanSlot<T> slot, final DisposableSingletonInstance<T> contextualInstance) {
+        log.debug("Disposing instance of bean {}.", slot.bean);
+        T instance = contextualInstance.getInstance();
+        if (instance == null) {
+            contextualInstance.getCreationalContext().release();
+        } else {
+            slot.bean.destroy(instance, contextualInstance.getCreationalContext());
+        }
+    }
+
+    /**
+     * Runs the destruction of removed instances in parallel. An instance is destroyed once all removed instances
+     * depending on it have been destroyed. Instances in a dependency cycle are destroyed without order among each
+     * other once their dependents outside the cycle have been destroyed.
+     */
+    private final class OrderedDestruction {
+        private final Map<BeanSlot<?>, Runnable> destructions;
+        /** Removed dependencies of each slot without the dependencies in the same dependency cycle. */
+        private final Map<BeanSlot<?>, List<BeanSlot<?>>> dependencies = new HashMap<>();
+        private final Map<BeanSlot<?>, AtomicInteger> pendingDependents = new HashMap<>();
+        private final CountDownLatch finished;
+        private ExecutorService executor;
+
+        public OrderedDestruction(final Map<BeanSlot<?>, Runnable> destructions) {
+            this.destructions = destructions;
+            this.finished = new CountDownLatch(destructions.size());
+
+            for (BeanSlot<?> slot : destructions.keySet()) {
+                List<BeanSlot<?>> slotDependencies = new ArrayList<>();
+                for (BeanSlot<?> dependency : slot.dependencies) {
+                    if (destructions.containsKey(dependency)) {
+                        slotDependencies.add(dependency);
+                    }
+                }
+                dependencies.put(slot, slotDependencies);
+                pendingDependents.put(slot, new AtomicInteger());
+            }
+
+            Map<BeanSlot<?>, Integer> components = findComponents();
+            for (Map.Entry<BeanSlot<?>, List<BeanSlot<?>>> entry : dependencies.entrySet()) {
+                Integer component = components.get(entry.getKey());
+                for (Iterator<BeanSlot<?>> iterator = entry.getValue().iterator(); iterator.hasNext(); ) {
+                    BeanSlot<?> dependency = iterator.next();
+                    if (components.get(dependency).equals(component)) {
+                        iterator.remove();
+                    } else {
+                        pendingDependents.get(dependency).incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Destroys the instances and waits for them to be destroyed.
+         *
+         * @param timeoutNanos maximum time to wait
+         */
+        public void run(final long timeoutNanos) {
+            int threads = Math.min(destructions.size(), Runtime.getRuntime().availableProcessors());
+            executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("DisposableSingleton-shutdown"));
+            try {
+                // collected before submitting, the destructions already running release further slots
+                List<BeanSlot<?>> startSlots = new ArrayList<>();
+                for (Map.Entry<BeanSlot<?>, AtomicInteger> entry : pendingDependents.entrySet()) {
+                    if (entry.getValue().get() == 0) {
+                        startSlots.add(entry.getKey());
+                    }
+                }
+                for (BeanSlot<?> slot : startSlots) {
+                    submit(slot);
+                }
+
+                if (!finished.await(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    log.warn("{} disposable singletons have not been destroyed within the shutdown timeout.",
+                             finished.getCount());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while destroying disposable singletons.", ex);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Returns the strongly connected components of the dependency graph (Tarjan). The slots of a dependency
+         * cycle share their component, every other slot is a component of its own.
+         *
+         * @return component of each slot
+         */
+        private Map<BeanSlot<?>, Integer> findComponents() {
+            Map<BeanSlot<?>, Integer> components = new HashMap<>();
+            Map<BeanSlot<?>, Integer> indices = new HashMap<>();
+            Map<BeanSlot<?>, Integer> lowLinks = new HashMap<>();
+            Deque<BeanSlot<?>> stack = new ArrayDeque<>();
+            for (BeanSlot<?> slot : dependencies.keySet()) {
+                if (!indices.containsKey(slot)) {
+                    connect(slot, components, indices, lowLinks, stack);
+                }
+            }
+            return components;
+        }
+
+        private void connect(final BeanSlot<?> slot, final Map<BeanSlot<?>, Integer> components,
+                             final Map<BeanSlot<?>, Integer> indices, final Map<BeanSlot<?>, Integer> lowLinks,
+                             final Deque<BeanSlot<?>> stack) {
+            int index = indices.size();
+            indices.put(slot, index);
+            lowLinks.put(slot, index);
+            stack.push(slot);
+
+            for (BeanSlot<?> dependency : dependencies.get(slot)) {
+                if (!indices.containsKey(dependency)) {
+                    connect(dependency, components, indices, lowLinks, stack);
+                    lowLinks.put(slot, Math.min(lowLinks.get(slot), lowLinks.get(dependency)));
+                } else if (!components.containsKey(dependency)) {
+                    // still on the stack, part of the component being built
+                    lowLinks.put(slot, Math.min(lowLinks.get(slot), indices.get(dependency)));
+                }
+            }
+
+            if (lowLinks.get(slot) == index) {
+                BeanSlot<?> member;
+                do {
+                    member = stack.pop();
+                    components.put(member, index);
+                } while (member != slot);
+            }
+        }
+
+        private void submit(final BeanSlot<?> slot) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            destructions.get(slot).run();
+                        } finally {
+                            finished.countDown();
+                            for (BeanSlot<?> dependency : dependencies.get(slot)) {
+                                if (pendingDependents.get(dependency).decrementAndGet() == 0) {
+                                    submit(dependency);
+                                }
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                log.debug("Destruction of bean {} has been abandoned.", slot.bean);
+            }
+        }
+    }
+
+    /**
+     * Holds the current instance of a bean together with the state needed to create it exactly once.
+     *
+     * @param <T> type of the bean
+     */
+    private static class BeanSlot<T> {
+        private final Bean<T> bean;
+        /** Key of the bean across restarts and nodes, see {@link BeanKey}. */
+        private final String key;
+        private final AtomicReference<DisposableSingletonInstance<T>> current = new AtomicReference<>();
+        private final ReentrantLock creationLock = new ReentrantLock();
+        private volatile Thread creator;
+        private final Set<BeanSlot<?>> dependencies =
+                Collections.newSetFromMap(new ConcurrentHashMap<BeanSlot<?>, Boolean>());
+        private final BeanCounters counters = new BeanCounters();
+
+        private final long expireAfterWriteNanos;
+        private final long expireAfterAccessNanos;
+        private final boolean expiring;
+        private final ReferenceStrength referenceStrength;
+        private final String snapshotVersion;
+        private final boolean managedBean;
+        private volatile boolean restorable;
+        private final RegionState region;
+
+        /**
+         * Creates the slot of a bean. The settings are read from the given annotated type or member, or from the
+         * bean class if not available.
+         *
+         * @param bean the bean
+         * @param annotated annotated type or member defining the bean, may be null
+         * @param region region of the bean, may be null
+         */
+        public BeanSlot(final Bean<T> bean, final Annotated annotated, final RegionState region) {
+            this.bean = bean;
+            this.key = BeanKey.of(bean);
+            this.region = region;
+
+            Expiration expiration = getAnnotation(bean, annotated, Expiration.class);
+            if (expiration == null) {
+                this.expireAfterWriteNanos = 0;
+                this.expireAfterAccessNanos = 0;
+            } else {
+                this.expireAfterWriteNanos = expiration.unit().toNanos(expiration.expireAfterWrite());
+                this.expireAfterAccessNanos = expiration.unit().toNanos(expiration.expireAfterAccess());
+            }
+            this.expiring = expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+
+            Reclaimable reclaimable = getAnnotation(bean, annotated, Reclaimable.class);
+            this.referenceStrength = reclaimable == null ? null : reclaimable.value();
+
+            Snapshot snapshot = getAnnotation(bean, annotated, Snapshot.class);
+            this.snapshotVersion = snapshot == null ? null : snapshot.version();
+            this.managedBean = annotated == null || annotated instanceof AnnotatedType;
+        }
+
+        private static <A extends Annotation> A getAnnotation(final Bean<?> bean, final Annotated annotated,
+                                                              final Class<A> annotationType) {
+            return annotated == null ? bean.getBeanClass().getAnnotation(annotationType)
+                                     : annotated.getAnnotation(annotationType);
+        }
+    }
+
+    /**
+     * Epoch and beans of a region.
+     */
+    private static final class RegionState {
+        private final AtomicLong epoch = new AtomicLong();
+        private final List<BeanSlot<?>> slots = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Immutable open addressing table mapping beans by identity to dense ids and the dense ids to the slots.
+     * A lookup costs an identity hash, a few array loads and reference comparisons regardless of the bean
+     * implementation.
+     */
+    private static final class BeanIndex {
+        private final Object[] beans;
+        private final int[] ids;
+        private final BeanSlot<?>[] slots;
+        private final int mask;
+
+        /**
+         * Creates the table of the given slots, the position in the list is the id of the bean.
+         *
+         * @param slots slots of the beans
+         */
+        public BeanIndex(final List<BeanSlot<?>> slots) {
+            this.slots = slots.toArray(new BeanSlot<?>[slots.size()]);
+            int capacity = Integer.highestOneBit(Math.max(slots.size(), 1) * 4 - 1) << 1;
+            this.beans = new Object[capacity];
+            this.ids = new int[capacity];
+            this.mask = capacity - 1;
+
+            for (int id = 0; id < this.slots.length; id++) {
+                int i = hash(this.slots[id].bean) & mask;
+                while (beans[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                beans[i] = this.slots[id].bean;
+                ids[i] = id;
+            }
+        }
+
+        /**
+         * Returns the slot of the given bean.
+         *
+         * @param bean the bean
+         * @return slot of the bean or null if the bean is not in the table
+         */
+        public BeanSlot<?> get(final Object bean) {
+            int i = hash(bean) & mask;
+            Object candidate;
+            while ((candidate = beans[i]) != null) {
+                if (candidate == bean) {
+                    return slots[ids[i]];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(final Object bean) {
+            int hash = System.identityHashCode(bean);
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Key of the reverse instance index comparing instances by identity. Keys of reclaimable instances only
+     * hold a weak reference and are equal to themselves once the instance has been collected.
+     */
+    private static final class InstanceKey {
+        private final Object instance;
+        private final Reference<Object> reference;
+        private final int hashCode;
+
+        public InstanceKey(final Object instance) {
+            this(instance, false);
+        }
+
+        public InstanceKey(final Object instance, final boolean weak) {
+            this.instance = weak ? null : instance;
+            this.reference = weak ? new WeakReference<>(instance) : null;
+            this.hashCode = System.identityHashCode(instance);
+        }
+
+        private Object get() {
+            return reference == null ? instance : reference.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other == this) {
+                return true;
+            }
+            Object key = get();
+            return other instanceof InstanceKey && key != null && ((InstanceKey) other).get() == key;
+        }
+    }
+
+    /**
+     * Lease of a single instance, closing it more than once has no effect.
+     *
+     * @param <T> type of the bean
+     */
+    private final class InstanceLease<T> implements SingletonLease<T> {
+        private final DisposableSingletonInstance<T> contextualInstance;
+        private final T instance;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        public InstanceLease(final DisposableSingletonInstance<T> contextualInstance, final T instance) {
+            this.contextualInstance = contextualInstance;
+            this.instance = instance;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public T get() {
+            return instance;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                contextualInstance.release();
+            }
+        }
+    }
+
+    /**
+     * A container class for disposable singleton instances. The instances keep track of their creation and last
+     * access for expiration and eviction and act as timer of the expiration wheel.
+     *
+     * @param <T> type of instance in container
+     */
+    private class DisposableSingletonInstance<T> implements ContextualInstance<T>, TimerWheel.Timer {
+        private final BeanSlot<T> slot;
+        private final T instance;
+        private final Reference<T> reference;
+        private final InstanceKey indexKey;
+        /** Held strongly to be released later, may keep a reclaimable instance reachable. */
+        private final CreationalContext<T> creationalContext;
+        private final long weight;
+        private final long creationTime;
+        private volatile long accessTime;
+
+        /** Number of open leases, the sign bit is set once the instance has been retired. */
+        private final AtomicInteger leases = new AtomicInteger();
+
+        /** Epoch of the region of the bean when the instance has been created. */
+        private final long epoch;
+
+        public DisposableSingletonInstance(final BeanSlot<T> slot, final T instance,
+                                           final CreationalContext<T> creationalContext, final long weight) {
+            this.slot = slot;
+            if (slot.referenceStrength == null) {
+                this.instance = instance;
+                this.reference = null;
+            } else {
+                this.instance = null;
+                this.reference = slot.referenceStrength == ReferenceStrength.SOFT
+                                 ? new SoftReference<>(instance, referenceQueue)
+                                 : new WeakReference<>(instance, referenceQueue);
+            }
+            this.indexKey = new InstanceKey(instance, reference != null);
+            this.creationalContext = creationalContext;
+            this.weight = weight;
+            this.creationTime = System.nanoTime();
+            this.accessTime = creationTime;
+            this.epoch = slot.region == null ? 0 : slot.region.epoch.get();
+        }
+
+        /**
+         * Checks if the region of the bean has been disposed since the instance has been created.
+         *
+         * @return true if the instance belongs to an older epoch of its region
+         */
+        public boolean isStale() {
+            return slot.region != null && slot.region.epoch.get() != epoch;
+        }
+
+        /**
+         * Opens a lease unless the instance has been retired.
+         *
+         * @return true if the lease has been opened
+         */
+        public boolean tryAcquire() {
+            int state;
+            do {
+                state = leases.get();
+                if (state < 0) {
+                    return false;
+                }
+            } while (!leases.compareAndSet(state, state + 1));
+            return true;
+        }
+
+        /**
+         * Closes a lease. Closing the last lease of a retired instance destroys it on the maintenance thread.
+         */
+        public void release() {
+            if (leases.decrementAndGet() == RETIRED) {
+                destroyInBackground(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            destroyRetired(slot, DisposableSingletonInstance.this);
+                        } catch (RuntimeException ex) {
+                            log.error("Destroying instance of bean " + slot.bean + " failed.", ex);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Retires the removed instance so that no more leases can be opened.
+         *
+         * @return true if there are no open leases and the instance can be destroyed right away
+         */
+        public boolean retire() {
+            int state;
+            do {
+                state = leases.get();
+            } while (!leases.compareAndSet(state, state | RETIRED));
+            return state == 0;
+        }
+
+        /**
+         * Records an access of the instance. If the instance has expired already it is disposed.
+         *
+         * @return false if the instance has expired
+         */
+        public boolean access() {
+            long now = System.nanoTime();
+            if (slot.expiring && now - getDeadline() >= 0) {
+                expire(now);
+                return false;
+            }
+
+            accessTime = now;
+            return true;
+        }
+
+        /**
+         * Returns the {@link System#nanoTime()} at which the instance expires.
+         *
+         * @return deadline
+         */
+        public long getDeadline() {
+            long deadline = Long.MAX_VALUE;
+            if (slot.expireAfterWriteNanos > 0) {
+                deadline = creationTime + slot.expireAfterWriteNanos;
+            }
+            if (slot.expireAfterAccessNanos > 0) {
+                long accessDeadline = accessTime + slot.expireAfterAccessNanos;
+                deadline = deadline == Long.MAX_VALUE || accessDeadline - deadline < 0 ? accessDeadline : deadline;
+            }
+            return deadline;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long expire(final long now) {
+            if (slot.current.get() != this) {
+                return DONE;
+            }
+
+            long deadline = getDeadline();
+            if (now - deadline < 0) {
+                return deadline;
+            }
+
+            if (remove(slot, this)) {
+                log.debug("Instance of bean {} has expired.", slot.bean);
+                destruction(slot, this, RemovalCause.EXPIRED).run();
+            }
+            return DONE;
+        }
+
+        /**
+         * Returns the instance or null if it has been collected.
+         *
+         * @return the instance
+         */
+        @Override
+        public T getInstance() {
+            return reference == null ? instance : reference.get();
         }
 
         @Override
@@ -21,34 +21,248 @@ package net.phalanxx.cdiext.scope;
  */
 
 
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.BeforeShutdown;
 import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.ProcessBean;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.phalanxx.cdiext.util.AnnotationUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * CDI extension registering the {@link DisposableSingleton} scope.
+ * CDI extension registering the {@link DisposableSingleton} and {@link ProxiedDisposableSingleton} scopes.
  *
  * @author rbachlec
  */
 public class DisposableSingletonExtension implements Extension {
 
+    /** System property naming the directory of the snapshots of {@link Snapshot} beans. */
+    public static final String SNAPSHOT_DIRECTORY_PROPERTY = "net.phalanxx.cdiext.snapshotDirectory";
+
+    /** Distinguishes the management beans of several containers running in the same JVM. */
+    private static final AtomicInteger DEPLOYMENT_IDS = new AtomicInteger();
+
+    private final Logger log = LoggerFactory.getLogger(DisposableSingletonExtension.class);
+
+    private final DisposableSingletonContextImpl context = new DisposableSingletonContextImpl();
+    private final DisposableSingletonContextImpl proxiedContext = new ProxiedDisposableSingletonContextImpl();
+    private final List<ObjectName> registeredMBeans = new ArrayList<>();
+
+    /** Observers of {@link DisposeOn} beans by context, event type and qualifier types. */
+    private final Map<List<Object>, DisposingObserver> disposingObservers = new LinkedHashMap<>();
+    private final List<Throwable> definitionErrors = new ArrayList<>();
+
+    private final FileChangeWatcher fileChangeWatcher = new FileChangeWatcher();
+    private volatile BeanManager beanManager;
+
     /**
-     * Adds scope before bean discovery phase.
+     * Adds scopes before bean discovery phase.
      *
      * @param bbd {@link BeforeBeanDiscovery} event
      */
     public void beforeBeanDiscovery(@Observes final BeforeBeanDiscovery bbd) {
         bbd.addScope(DisposableSingleton.class, false, false);
+        bbd.addScope(ProxiedDisposableSingleton.class, true, false);
+    }
+
+    /**
+     * Registers discovered {@link DisposableSingleton} and {@link ProxiedDisposableSingleton} beans together
+     * with their settings at their context.
+     *
+     * @param pb {@link ProcessBean} event
+     */
+    public void processBean(@Observes final ProcessBean<?> pb) {
+        Bean<?> bean = pb.getBean();
+        if (DisposableSingleton.class.equals(bean.getScope())) {
+            context.register(bean, pb.getAnnotated());
+            bindDisposal(context, bean, pb.getAnnotated().getAnnotation(DisposeOn.class));
+            bindRefresh(context, bean, pb.getAnnotated().getAnnotation(RefreshOnFileChange.class));
+        } else if (ProxiedDisposableSingleton.class.equals(bean.getScope())) {
+            proxiedContext.register(bean, pb.getAnnotated());
+            bindDisposal(proxiedContext, bean, pb.getAnnotated().getAnnotation(DisposeOn.class));
+            bindRefresh(proxiedContext, bean, pb.getAnnotated().getAnnotation(RefreshOnFileChange.class));
+        }
     }
 
     /**
-     * Adds context after bean discovery phase.
+     * Adds contexts and the observers of {@link DisposeOn} beans after bean discovery phase.
      *
      * @param abd {@link AfterBeanDiscovery} event
      */
     public void afterBeanDiscovery(@Observes final AfterBeanDiscovery abd) {
-        abd.addContext(new DisposableSingletonContextImpl());
+        abd.addContext(context);
+        abd.addContext(proxiedContext);
+
+        for (DisposingObserver observer : disposingObservers.values()) {
+            abd.addObserverMethod(observer);
+        }
+        for (Throwable definitionError : definitionErrors) {
+            abd.addDefinitionError(definitionError);
+        }
+    }
+
+    /**
+     * Adds a bean to the observers of the events given by its {@link DisposeOn} annotation. Beans observing the
+     * same event type with the same qualifiers share one observer.
+     *
+     * @param scopeContext context of the bean
+     * @param bean the bean
+     * @param disposeOn annotation of the bean, may be null
+     */
+    private void bindDisposal(final DisposableSingletonContextImpl scopeContext, final Bean<?> bean,
+                              final DisposeOn disposeOn) {
+        if (disposeOn == null) {
+            return;
+        }
+
+        Set<Annotation> qualifiers = new HashSet<>();
+        try {
+            for (Class<? extends Annotation> qualifierType : disposeOn.qualifiers()) {
+                qualifiers.add(AnnotationUtil.newInstance(qualifierType));
+            }
+        } catch (IllegalArgumentException ex) {
+            definitionErrors.add(new IllegalArgumentException("Invalid qualifier of @DisposeOn of bean " + bean
+                                                              + ".", ex));
+            return;
+        }
+
+        for (Class<?> eventType : disposeOn.value()) {
+            List<Object> key = Arrays.<Object>asList(scopeContext, eventType, qualifiers);
+            DisposingObserver observer = disposingObservers.get(key);
+            if (observer == null) {
+                observer = new DisposingObserver(scopeContext, eventType, qualifiers);
+                disposingObservers.put(key, observer);
+            }
+            observer.addBean(bean);
+        }
+        log.debug("Bean {} is disposed on events {}.", bean, Arrays.toString(disposeOn.value()));
+    }
+
+    /**
+     * Watches the files given by the {@link RefreshOnFileChange} annotation of a bean.
+     *
+     * @param <T> type of the bean
+     * @param scopeContext context of the bean
+     * @param bean the bean
+     * @param refreshOnFileChange annotation of the bean, may be null
+     */
+    private <T> void bindRefresh(final DisposableSingletonContextImpl scopeContext, final Bean<T> bean,
+                                 final RefreshOnFileChange refreshOnFileChange) {
+        if (refreshOnFileChange == null) {
+            return;
+        }
+
+        Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                if (scopeContext.hasInstance(bean)) {
+                    scopeContext.refresh(bean, beanManager.createCreationalContext(bean),
+                                         DisposableSingletonContext.DEFAULT_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS);
+                }
+            }
+        };
+        for (String file : refreshOnFileChange.value()) {
+            fileChangeWatcher.watch(Paths.get(file), refreshOnFileChange.debounceMillis(), TimeUnit.MILLISECONDS,
+                                    refresh);
+        }
+    }
+
+    /**
+     * Indexes the discovered beans, enables snapshots if configured, starts watching the files of
+     * {@link RefreshOnFileChange} beans and registers the statistics of the contexts at the platform MBean server
+     * after deployment validation.
+     *
+     * @param adv {@link AfterDeploymentValidation} event
+     * @param beanManager the bean manager
+     */
+    public void afterDeploymentValidation(@Observes final AfterDeploymentValidation adv,
+                                          final BeanManager beanManager) {
+        context.indexBeans();
+        proxiedContext.indexBeans();
+
+        context.setBeanManager(beanManager);
+        proxiedContext.setBeanManager(beanManager);
+        String snapshotDirectory = System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY);
+        if (snapshotDirectory != null) {
+            context.setSnapshotDirectory(Paths.get(snapshotDirectory));
+            proxiedContext.setSnapshotDirectory(Paths.get(snapshotDirectory));
+        }
+
+        this.beanManager = beanManager;
+        try {
+            fileChangeWatcher.start();
+        } catch (IOException ex) {
+            log.warn("Could not watch the files of the disposable singletons.", ex);
+        }
+
+        int deploymentId = DEPLOYMENT_IDS.incrementAndGet();
+        registerMBean(context, deploymentId);
+        registerMBean(proxiedContext, deploymentId);
+    }
+
+    /**
+     * Stops watching files, unregisters the statistics and destroys all instances of the contexts before the
+     * container shuts down.
+     *
+     * @param bs {@link BeforeShutdown} event
+     */
+    public void beforeShutdown(@Observes final BeforeShutdown bs) {
+        fileChangeWatcher.close();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredMBeans) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ex) {
+                log.warn("Could not unregister MBean " + name + ".", ex);
+            }
+        }
+        registeredMBeans.clear();
+
+        context.shutdown();
+        proxiedContext.shutdown();
+    }
+
+    /**
+     * Registers the statistics of a context at the platform MBean server. Failures are logged only.
+     *
+     * @param scopeContext the context
+     * @param deploymentId id of the deployment
+     */
+    private void registerMBean(final DisposableSingletonContextImpl scopeContext, final int deploymentId) {
+        try {
+            ObjectName name = new ObjectName("net.phalanxx.cdiext:type=DisposableSingletonStatistics,scope="
+                                             + scopeContext.getScope().getSimpleName() + ",id=" + deploymentId);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new DisposableSingletonStatistics(scopeContext),
+                                                                     name);
+            registeredMBeans.add(name);
+        } catch (JMException ex) {
+            log.warn("Could not register statistics of scope " + scopeContext.getScope().getName() + ".", ex);
+        }
     }
 
 }
@@ -0,0 +1,68 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.List;
+
+/**
+ * Exposes the statistics of a disposable singleton context via JMX.
+ *
+ * @author rbachlec
+ */
+class DisposableSingletonStatistics implements DisposableSingletonStatisticsMXBean {
+
+    private final DisposableSingletonContextImpl context;
+
+    /**
+     * Creates the management bean of a context.
+     *
+     * @param context the context
+     */
+    public DisposableSingletonStatistics(final DisposableSingletonContextImpl context) {
+        this.context = context;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getScope() {
+        return context.getScope().getName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLiveInstances() {
+        return context.getLiveInstances();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalWeight() {
+        return context.getTotalWeight();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<BeanStatistics> getBeanStatistics() {
+        return context.getStatistics();
+    }
+
+}
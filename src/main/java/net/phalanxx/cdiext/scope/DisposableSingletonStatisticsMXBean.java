@@ -0,0 +1,53 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.List;
+
+/**
+ * Management interface exposing the statistics of a disposable singleton context via JMX.
+ *
+ * @author rbachlec
+ */
+public interface DisposableSingletonStatisticsMXBean {
+
+    /**
+     * @return name of the scope served by the context
+     */
+    String getScope();
+
+    /**
+     * @return number of beans currently having an instance in the context
+     */
+    int getLiveInstances();
+
+    /**
+     * @return total weight of the instances in the context
+     */
+    long getTotalWeight();
+
+    /**
+     * @return statistics of all beans known to the context
+     */
+    List<BeanStatistics> getBeanStatistics();
+
+}
@@ -0,0 +1,55 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Disposes the instance of a {@link DisposableSingleton} or {@link ProxiedDisposableSingleton} bean whenever
+ * one of the given events is fired. The events can be restricted to the given qualifiers, which must not have
+ * any members.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface DisposeOn {
+
+    /**
+     * Types of the events disposing the instance.
+     *
+     * @return event types
+     */
+    Class<?>[] value();
+
+    /**
+     * Qualifiers the events must have.
+     *
+     * @return qualifier types
+     */
+    Class<? extends Annotation>[] qualifiers() default {};
+
+}
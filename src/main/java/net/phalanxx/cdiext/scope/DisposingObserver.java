@@ -0,0 +1,107 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.enterprise.event.Reception;
+import javax.enterprise.event.TransactionPhase;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.ObserverMethod;
+
+/**
+ * Synthetic observer disposing the instances of the beans annotated with {@link DisposeOn} for one event type
+ * and set of qualifiers.
+ *
+ * @author rbachlec
+ */
+class DisposingObserver implements ObserverMethod<Object> {
+
+    private final DisposableSingletonContextImpl context;
+    private final Class<?> eventType;
+    private final Set<Annotation> qualifiers;
+    private final List<Bean<?>> beans = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param context context of the beans
+     * @param eventType type of the observed event
+     * @param qualifiers qualifiers of the observed event
+     */
+    public DisposingObserver(final DisposableSingletonContextImpl context, final Class<?> eventType,
+                             final Set<Annotation> qualifiers) {
+        this.context = context;
+        this.eventType = eventType;
+        this.qualifiers = qualifiers;
+    }
+
+    /**
+     * Adds a bean to be disposed when the event is fired.
+     *
+     * @param bean the bean
+     */
+    void addBean(final Bean<?> bean) {
+        beans.add(bean);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<?> getBeanClass() {
+        return DisposingObserver.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Type getObservedType() {
+        return eventType;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Annotation> getObservedQualifiers() {
+        return qualifiers;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Reception getReception() {
+        return Reception.ALWAYS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TransactionPhase getTransactionPhase() {
+        return TransactionPhase.IN_PROGRESS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void notify(final Object event) {
+        context.disposeOnEvent(beans);
+    }
+
+}
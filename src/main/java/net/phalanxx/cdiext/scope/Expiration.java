@@ -0,0 +1,61 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines when the instance of a {@link DisposableSingleton} bean expires. Expired instances are disposed
+ * automatically and created again on demand. A value of 0 disables the respective expiry.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Expiration {
+
+    /**
+     * Duration after which an instance expires once it has been created.
+     *
+     * @return duration since creation
+     */
+    long expireAfterWrite() default 0;
+
+    /**
+     * Duration after which an instance expires once it has not been accessed anymore.
+     *
+     * @return duration since last access
+     */
+    long expireAfterAccess() default 0;
+
+    /**
+     * Unit of the durations.
+     *
+     * @return time unit
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+}
@@ -0,0 +1,248 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches files with a single {@link WatchService} thread and runs the actions registered for a file once the
+ * file has been quiet for its debounce period. The directories of the files are watched, so files may be
+ * replaced or created after the watcher has been started.
+ *
+ * @author rbachlec
+ */
+class FileChangeWatcher implements Closeable {
+
+    private final Logger log = LoggerFactory.getLogger(FileChangeWatcher.class);
+
+    /** Watched files, only modified before the watcher is started. */
+    private final Map<Path, WatchedFile> files = new HashMap<>();
+
+    /** Files changed recently and the nano time they are due, only accessed by the watcher thread. */
+    private final Map<WatchedFile, Long> dueFiles = new HashMap<>();
+
+    private volatile WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Registers an action to be run when the given file changes. Must be called before {@link #start()}.
+     *
+     * @param file the file
+     * @param debounce time the file has to be unchanged before the action is run
+     * @param unit unit of the debounce time
+     * @param action action to be run
+     */
+    void watch(final Path file, final long debounce, final TimeUnit unit, final Runnable action) {
+        Path path = file.toAbsolutePath().normalize();
+        WatchedFile watchedFile = files.get(path);
+        if (watchedFile == null) {
+            watchedFile = new WatchedFile(path);
+            files.put(path, watchedFile);
+        }
+        watchedFile.debounceNanos = Math.max(watchedFile.debounceNanos, unit.toNanos(debounce));
+        watchedFile.actions.add(action);
+    }
+
+    /**
+     * Starts watching the registered files. Files in missing directories are skipped.
+     *
+     * @throws IOException if the watch service could not be created
+     */
+    synchronized void start() throws IOException {
+        if (files.isEmpty() || watchService != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        for (WatchedFile watchedFile : files.values()) {
+            try {
+                watchedFile.path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                      StandardWatchEventKinds.ENTRY_MODIFY,
+                                                      StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException ex) {
+                log.warn("Could not watch file " + watchedFile.path + ".", ex);
+            }
+        }
+
+        thread = new DaemonThreadFactory("DisposableSingleton-file-watcher").newThread(new Runnable() {
+            @Override
+            public void run() {
+                watchFiles();
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Stops watching the files.
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            log.warn("Could not close the watch service.", ex);
+        }
+        thread.interrupt();
+    }
+
+    /**
+     * Collects the changes of the watched files and runs the actions of the files which have become due, until
+     * the watch service is closed.
+     */
+    private void watchFiles() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (dueFiles.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = nextDueTime() - System.nanoTime();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : watchService.poll();
+                }
+
+                if (key != null) {
+                    collectChanges(key);
+                }
+                runDueActions();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            log.debug("File watcher stopped.");
+        }
+    }
+
+    /**
+     * Marks the watched files changed according to the events of the given key as due after their debounce
+     * period.
+     *
+     * @param key signalled key of a directory
+     */
+    private void collectChanges(final WatchKey key) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.OVERFLOW.equals(event.kind())) {
+                for (WatchedFile watchedFile : files.values()) {
+                    if (watchedFile.path.getParent().equals(directory)) {
+                        markChanged(watchedFile);
+                    }
+                }
+            } else {
+                WatchedFile watchedFile = files.get(directory.resolve((Path) event.context()));
+                if (watchedFile != null) {
+                    markChanged(watchedFile);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Marks a file changed, postponing its actions if it has been changed before.
+     *
+     * @param watchedFile the changed file
+     */
+    private void markChanged(final WatchedFile watchedFile) {
+        dueFiles.put(watchedFile, System.nanoTime() + watchedFile.debounceNanos);
+    }
+
+    /**
+     * Returns the nano time the next changed file is due.
+     *
+     * @return nano time
+     */
+    private long nextDueTime() {
+        Iterator<Long> dueTimes = dueFiles.values().iterator();
+        long next = dueTimes.next();
+        while (dueTimes.hasNext()) {
+            long dueTime = dueTimes.next();
+            if (dueTime - next < 0) {
+                next = dueTime;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Runs the actions of all changed files whose debounce period has passed. Failures are logged.
+     */
+    private void runDueActions() {
+        long now = System.nanoTime();
+        List<WatchedFile> due = new ArrayList<>();
+        for (Iterator<Map.Entry<WatchedFile, Long>> it = dueFiles.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<WatchedFile, Long> entry = it.next();
+            if (entry.getValue() - now <= 0) {
+                due.add(entry.getKey());
+                it.remove();
+            }
+        }
+
+        for (WatchedFile watchedFile : due) {
+            log.debug("File {} has changed.", watchedFile.path);
+            for (Runnable action : watchedFile.actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException ex) {
+                    log.error("Handling the change of file " + watchedFile.path + " failed.", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * A watched file and the actions to be run when it changes.
+     */
+    private static final class WatchedFile {
+        private final Path path;
+        private final List<Runnable> actions = new ArrayList<>();
+        private long debounceNanos;
+
+        /**
+         * Constructor.
+         *
+         * @param path absolute path of the file
+         */
+        public WatchedFile(final Path path) {
+            this.path = path;
+        }
+    }
+
+}
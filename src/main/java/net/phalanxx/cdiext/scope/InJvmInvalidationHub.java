@@ -0,0 +1,84 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connects {@link InvalidationTransport}s within a single JVM, for example to test invalidations between
+ * several containers. Every transport returned by {@link #connect()} acts as one node, invalidations are
+ * delivered synchronously to the receivers of all other transports.
+ *
+ * @author rbachlec
+ */
+public class InJvmInvalidationHub {
+
+    private final List<Endpoint> endpoints = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a transport for a new node connected to the hub.
+     *
+     * @return transport of the node
+     */
+    public InvalidationTransport connect() {
+        Endpoint endpoint = new Endpoint();
+        endpoints.add(endpoint);
+        return endpoint;
+    }
+
+    /**
+     * Transport of a single node.
+     */
+    private final class Endpoint implements InvalidationTransport {
+        private final List<Receiver> receivers = new CopyOnWriteArrayList<>();
+
+        /** {@inheritDoc} */
+        @Override
+        public void subscribe(final Receiver receiver) {
+            receivers.add(receiver);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void unsubscribe(final Receiver receiver) {
+            receivers.remove(receiver);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void publish(final Set<String> beanKeys) {
+            Set<String> keys = Collections.unmodifiableSet(new HashSet<>(beanKeys));
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint != this) {
+                    for (Receiver receiver : endpoint.receivers) {
+                        receiver.onInvalidation(keys);
+                    }
+                }
+            }
+        }
+    }
+
+}
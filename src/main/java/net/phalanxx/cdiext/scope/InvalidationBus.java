@@ -0,0 +1,125 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes invalidations of a context through an {@link InvalidationTransport}. Invalidations are collected
+ * for a batch window and published together, so a burst of invalidations of the same beans results in a
+ * single message per bean.
+ *
+ * @author rbachlec
+ */
+final class InvalidationBus {
+
+    private final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private final InvalidationTransport transport;
+    private final InvalidationTransport.Receiver receiver;
+    private final ScheduledExecutorService executor;
+    private final long batchWindowNanos;
+
+    private final Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates the bus and subscribes the receiver of the context to the transport.
+     *
+     * @param transport the transport
+     * @param receiver receiver disposing the beans invalidated by other nodes
+     * @param executor executor running the delayed publication
+     * @param batchWindowNanos nanoseconds invalidations are collected before being published
+     */
+    InvalidationBus(final InvalidationTransport transport, final InvalidationTransport.Receiver receiver,
+                    final ScheduledExecutorService executor, final long batchWindowNanos) {
+        this.transport = transport;
+        this.receiver = receiver;
+        this.executor = executor;
+        this.batchWindowNanos = batchWindowNanos;
+        transport.subscribe(receiver);
+    }
+
+    /**
+     * Adds the key of an invalidated bean to the next batch.
+     *
+     * @param beanKey key of the invalidated bean
+     */
+    void publish(final String beanKey) {
+        pendingKeys.add(beanKey);
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(flush, batchWindowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Publishes the pending invalidations and unsubscribes from the transport.
+     */
+    void close() {
+        flush();
+        transport.unsubscribe(receiver);
+    }
+
+    /**
+     * Publishes the invalidations collected so far.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        Set<String> batch = new HashSet<>();
+        for (String beanKey : pendingKeys) {
+            if (pendingKeys.remove(beanKey)) {
+                batch.add(beanKey);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            log.debug("Publishing invalidation of {} beans.", batch.size());
+            try {
+                transport.publish(batch);
+            } catch (RuntimeException ex) {
+                log.error("Publishing invalidation of beans " + batch + " failed.", ex);
+            }
+        }
+    }
+
+}
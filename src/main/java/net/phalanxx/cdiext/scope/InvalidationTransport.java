@@ -0,0 +1,73 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.Set;
+
+/**
+ * Transport broadcasting invalidations of disposable singletons to the other nodes of a cluster. Beans are
+ * identified by keys consisting of their bean class and their qualifiers, which are the same on all nodes.
+ * <p/>
+ * Implementations must deliver published keys to the receivers subscribed on the other nodes, but not to the
+ * receivers subscribed on the publishing transport itself.
+ *
+ * @author rbachlec
+ * @see InJvmInvalidationHub
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Subscribes a receiver to the invalidations published by other nodes.
+     *
+     * @param receiver receiver to be subscribed
+     */
+    void subscribe(Receiver receiver);
+
+    /**
+     * Unsubscribes a receiver.
+     *
+     * @param receiver receiver to be unsubscribed
+     */
+    void unsubscribe(Receiver receiver);
+
+    /**
+     * Publishes the keys of invalidated beans to the other nodes.
+     *
+     * @param beanKeys keys of the invalidated beans
+     */
+    void publish(Set<String> beanKeys);
+
+    /**
+     * Receiver of invalidations published by other nodes.
+     */
+    interface Receiver {
+
+        /**
+         * Called when another node has invalidated beans.
+         *
+         * @param beanKeys keys of the invalidated beans
+         */
+        void onInvalidation(Set<String> beanKeys);
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines the size of the pool of a {@link Pooled} bean.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface PoolSize {
+
+    /**
+     * Number of instances created at startup and kept even if idle.
+     *
+     * @return minimum number of instances
+     */
+    int min() default 0;
+
+    /**
+     * Maximum number of instances, borrowers have to wait once all of them are leased.
+     *
+     * @return maximum number of instances
+     */
+    int max() default 8;
+
+    /**
+     * Duration after which idle instances exceeding the minimum are destroyed. A value of 0 keeps them.
+     *
+     * @return idle duration
+     */
+    long idleTimeout() default 60;
+
+    /**
+     * Maximum duration a borrower waits for an instance before an {@link IllegalStateException} is thrown.
+     *
+     * @return maximum waiting duration
+     */
+    long maxWait() default 30;
+
+    /**
+     * Unit of the durations.
+     *
+     * @return time unit
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+}
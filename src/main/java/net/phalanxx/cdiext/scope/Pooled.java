@@ -0,0 +1,49 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.enterprise.context.NormalScope;
+
+/**
+ * Normal scope borrowing instances from a bounded pool per bean. The size of the pool is defined by
+ * {@link PoolSize}.
+ * <p/>
+ * Injected references are client proxies. An invocation through the proxy borrows an instance for the current
+ * thread, which is given back by {@link ReturnToPoolInterceptor} once the invocation returns. The interceptor
+ * has to be enabled in the beans.xml of the archive containing the pooled beans, otherwise the instances stay
+ * leased until {@link PooledContext#releaseAll()} is called.
+ * <p/>
+ * Instances borrowed explicitly using {@link PooledContext#getPooled(Class)} stay leased to the thread until
+ * they are given back using {@link PooledContext}.
+ *
+ * @author rbachlec
+ */
+@NormalScope
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Pooled {
+}
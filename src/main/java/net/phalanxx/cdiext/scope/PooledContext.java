@@ -0,0 +1,105 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+
+/**
+ * This class can be used to borrow {@link Pooled} instances for the current thread and to give them back.
+ *
+ * @author rbachlec
+ */
+public class PooledContext {
+
+    @Inject private BeanManager beanManager;
+
+    private PooledContextImpl context;
+
+    /**
+     * If the current thread has already borrowed an instance for the given type this instance is returned.
+     * Otherwise an instance is borrowed from the pool of the bean, waiting if all of its instances are leased.
+     * The returned instance is not a client proxy and stays leased until it is given back explicitly.
+     *
+     * @param <T> type of the pooled instance
+     * @param type class of the pooled instance
+     * @return pooled instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getPooled(final Class<T> type) {
+        T result = null;
+        Bean<T> bean = (Bean<T>) beanManager.resolve(beanManager.getBeans(type));
+
+        if (bean != null && Pooled.class.equals(bean.getScope())) {
+            CreationalContext<T> creationalContext = beanManager.createCreationalContext(bean);
+            result = getContext().borrow(bean, creationalContext);
+        }
+        return result;
+    }
+
+    /**
+     * Gives back an instance leased by the current thread. If the current thread has not leased the given
+     * object an exception is thrown.
+     *
+     * @param <T> type of the pooled instance
+     * @param pooled pooled instance
+     */
+    public <T> void release(final T pooled) {
+        getContext().release(pooled);
+    }
+
+    /**
+     * Gives back all instances leased by the current thread. Should be called when the thread's work ends, for
+     * example at the end of a request.
+     *
+     * @return number of instances given back
+     */
+    public int releaseAll() {
+        return getContext().releaseAll();
+    }
+
+    /**
+     * Checks if the given object is leased by the current thread.
+     *
+     * @param <T> type of the object to search for
+     * @param pooled object to be searched for
+     * @return true/false
+     */
+    public <T> Boolean contains(final T pooled) {
+        return getContext().contains(pooled);
+    }
+
+    /**
+     * Returns the context of the {@link Pooled} scope. The context is looked up only once.
+     *
+     * @return the context implementation
+     */
+    private PooledContextImpl getContext() {
+        if (context == null) {
+            context = (PooledContextImpl) beanManager.getContext(Pooled.class);
+        }
+        return context;
+    }
+
+}
@@ -0,0 +1,332 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.spi.Context;
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Context implementation for the {@link Pooled} scope.
+ * <p/>
+ * Every bean has its own {@link BeanPool}. The instances borrowed by a thread are kept in a thread local map
+ * until they are given back, so repeated lookups by the same thread return the same instance without
+ * touching the pool. Instances borrowed through a client proxy are given back by
+ * {@link ReturnToPoolInterceptor} when the outermost invocation returns. Idle instances are evicted by a
+ * single maintenance thread.
+ *
+ * @author rbachlec
+ */
+public class PooledContextImpl implements Context {
+
+    private final Logger log = LoggerFactory.getLogger(PooledContextImpl.class);
+
+    private final ConcurrentHashMap<Bean<?>, BeanPool<?>> pools = new ConcurrentHashMap<>();
+
+    /** Instances leased by the current thread. */
+    private final ThreadLocal<Map<Bean<?>, Lease<?>>> leases = new ThreadLocal<>();
+
+    private final ScheduledExecutorService maintenanceExecutor =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Pooled-maintenance"));
+
+    private volatile BeanManager beanManager;
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends Annotation> getScope() {
+        return Pooled.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> T get(final Contextual<T> contextual, final CreationalContext<T> creationalContext) {
+        return lease((Bean<T>) contextual, creationalContext).pooledInstance.getInstance();
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T get(final Contextual<T> contextual) {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        Lease<T> lease = threadLeases == null ? null : (Lease<T>) threadLeases.get(contextual);
+        return lease == null ? null : lease.pooledInstance.getInstance();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    /**
+     * Returns the instance of the given bean leased by the current thread and borrows one if there is none.
+     * The lease is pinned: it is not given back when an invocation on the instance returns but only by
+     * {@link #release(Object)} or {@link #releaseAll()}.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param creationalContext creational context used if a new instance has to be created
+     * @return the leased instance
+     */
+    <T> T borrow(final Bean<T> bean, final CreationalContext<T> creationalContext) {
+        Lease<T> lease = lease(bean, creationalContext);
+        lease.pinned = true;
+        return lease.pooledInstance.getInstance();
+    }
+
+    /**
+     * Marks the start of an invocation on the given instance. Called by {@link ReturnToPoolInterceptor}.
+     *
+     * @param target the invoked instance
+     * @return lease of the current thread holding the instance or null if the instance is not leased
+     */
+    Lease<?> enter(final Object target) {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        if (threadLeases != null) {
+            for (Lease<?> lease : threadLeases.values()) {
+                if (lease.pooledInstance.getInstance() == target) {
+                    lease.depth++;
+                    return lease;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks the end of an invocation started by {@link #enter(Object)}. Once the outermost invocation has
+     * returned the instance is given back unless the lease is pinned or has been released meanwhile.
+     *
+     * @param lease the lease returned by {@link #enter(Object)}
+     */
+    void exit(final Lease<?> lease) {
+        lease.depth--;
+        if (lease.depth > 0 || lease.pinned) {
+            return;
+        }
+
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        if (threadLeases != null && threadLeases.get(lease.bean) == lease) {
+            threadLeases.remove(lease.bean);
+            if (threadLeases.isEmpty()) {
+                leases.remove();
+            }
+            lease.giveBack();
+        }
+    }
+
+    /**
+     * Gives back the given instance leased by the current thread.
+     *
+     * @param <T> type of the instance
+     * @param instance the leased instance
+     */
+    protected <T> void release(final T instance) {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        if (threadLeases != null) {
+            Iterator<Lease<?>> iterator = threadLeases.values().iterator();
+            while (iterator.hasNext()) {
+                Lease<?> lease = iterator.next();
+                if (lease.pooledInstance.getInstance() == instance) {
+                    iterator.remove();
+                    lease.giveBack();
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("The given instance is not leased by the current thread.");
+    }
+
+    /**
+     * Gives back all instances leased by the current thread.
+     *
+     * @return number of instances given back
+     */
+    protected int releaseAll() {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        if (threadLeases == null) {
+            return 0;
+        }
+
+        leases.remove();
+        for (Lease<?> lease : threadLeases.values()) {
+            lease.giveBack();
+        }
+        return threadLeases.size();
+    }
+
+    /**
+     * Checks if the given object is leased by the current thread.
+     *
+     * @param <T> type of the object to search for
+     * @param instance object to be searched for
+     * @return true/false
+     */
+    protected <T> Boolean contains(final T instance) {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        if (threadLeases != null) {
+            for (Lease<?> lease : threadLeases.values()) {
+                if (lease.pooledInstance.getInstance() == instance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the pool of a bean discovered by the container. The size of the pool is read from the given
+     * annotated type or producer method.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param annotated annotated type or member defining the bean
+     */
+    <T> void register(final Bean<T> bean, final Annotated annotated) {
+        pools.putIfAbsent(bean, new BeanPool<>(bean, annotated.getAnnotation(PoolSize.class)));
+    }
+
+    /**
+     * Prefills the pools and starts evicting idle instances. Called once the deployment has been validated.
+     *
+     * @param manager the bean manager
+     */
+    void start(final BeanManager manager) {
+        this.beanManager = manager;
+        for (BeanPool<?> pool : pools.values()) {
+            pool.prefill(manager);
+        }
+        maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                for (BeanPool<?> pool : pools.values()) {
+                    try {
+                        pool.evictIdle(now);
+                    } catch (RuntimeException ex) {
+                        log.error("Evicting idle instances failed.", ex);
+                    }
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Closes all pools. Called when the container shuts down.
+     */
+    void shutdown() {
+        maintenanceExecutor.shutdownNow();
+        for (BeanPool<?> pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Returns the pool of the given bean and creates a new one if the bean is unknown so far. The size of pools
+     * of beans not registered during discovery is read from the bean class.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @return pool of the bean
+     */
+    @SuppressWarnings("unchecked")
+    private <T> BeanPool<T> getPool(final Bean<T> bean) {
+        BeanPool<T> pool = (BeanPool<T>) pools.get(bean);
+        if (pool == null) {
+            BeanPool<T> newPool = new BeanPool<>(bean, bean.getBeanClass().getAnnotation(PoolSize.class));
+            pool = (BeanPool<T>) pools.putIfAbsent(bean, newPool);
+            if (pool == null) {
+                pool = newPool;
+                BeanManager manager = beanManager;
+                if (manager != null) {
+                    pool.prefill(manager);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the lease of the given bean held by the current thread and borrows an instance if there is none.
+     *
+     * @param <T> type of the bean
+     * @param bean the bean
+     * @param creationalContext creational context used if a new instance has to be created
+     * @return lease of the current thread
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Lease<T> lease(final Bean<T> bean, final CreationalContext<T> creationalContext) {
+        Map<Bean<?>, Lease<?>> threadLeases = leases.get();
+        Lease<T> lease = threadLeases == null ? null : (Lease<T>) threadLeases.get(bean);
+        if (lease == null) {
+            BeanPool<T> pool = getPool(bean);
+            lease = new Lease<>(bean, pool, pool.borrow(creationalContext));
+            if (threadLeases == null) {
+                threadLeases = new HashMap<>();
+                leases.set(threadLeases);
+            }
+            threadLeases.put(bean, lease);
+        }
+        return lease;
+    }
+
+    /**
+     * Instance leased by a thread together with its pool. Leases are only accessed by the leasing thread.
+     *
+     * @param <T> type of the bean
+     */
+    static final class Lease<T> {
+        private final Bean<T> bean;
+        private final BeanPool<T> pool;
+        private final BeanPool.PooledInstance<T> pooledInstance;
+        /** Number of running invocations on the instance. */
+        private int depth;
+        /** Whether the instance has been borrowed explicitly and has to be given back explicitly. */
+        private boolean pinned;
+
+        public Lease(final Bean<T> bean, final BeanPool<T> pool, final BeanPool.PooledInstance<T> pooledInstance) {
+            this.bean = bean;
+            this.pool = pool;
+            this.pooledInstance = pooledInstance;
+        }
+
+        public void giveBack() {
+            pool.giveBack(pooledInstance);
+        }
+    }
+
+}
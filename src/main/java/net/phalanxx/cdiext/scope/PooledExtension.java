@@ -0,0 +1,122 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.AfterBeanDiscovery;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.BeforeShutdown;
+import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.InterceptionType;
+import javax.enterprise.inject.spi.ProcessAnnotatedType;
+import javax.enterprise.inject.spi.ProcessBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CDI extension registering the {@link Pooled} scope.
+ *
+ * @author rbachlec
+ */
+public class PooledExtension implements Extension {
+
+    private final Logger log = LoggerFactory.getLogger(PooledExtension.class);
+
+    private final PooledContextImpl context = new PooledContextImpl();
+
+    private boolean pooledBeansFound;
+
+    /**
+     * Adds scope before bean discovery phase.
+     *
+     * @param bbd {@link BeforeBeanDiscovery} event
+     */
+    public void beforeBeanDiscovery(@Observes final BeforeBeanDiscovery bbd) {
+        bbd.addScope(Pooled.class, true, false);
+    }
+
+    /**
+     * Adds the {@link ReturnToPool} interceptor binding to {@link Pooled} bean classes.
+     *
+     * @param <X> type of the bean class
+     * @param pat {@link ProcessAnnotatedType} event
+     */
+    public <X> void processAnnotatedType(@Observes final ProcessAnnotatedType<X> pat) {
+        if (pat.getAnnotatedType().isAnnotationPresent(Pooled.class)) {
+            pat.setAnnotatedType(new ReturnToPoolAnnotatedType<>(pat.getAnnotatedType()));
+        }
+    }
+
+    /**
+     * Creates the pools of discovered {@link Pooled} beans.
+     *
+     * @param pb {@link ProcessBean} event
+     */
+    public void processBean(@Observes final ProcessBean<?> pb) {
+        Bean<?> bean = pb.getBean();
+        if (Pooled.class.equals(bean.getScope())) {
+            context.register(bean, pb.getAnnotated());
+            pooledBeansFound = true;
+        }
+    }
+
+    /**
+     * Adds context after bean discovery phase.
+     *
+     * @param abd {@link AfterBeanDiscovery} event
+     */
+    public void afterBeanDiscovery(@Observes final AfterBeanDiscovery abd) {
+        abd.addContext(context);
+    }
+
+    /**
+     * Prefills the pools after deployment validation. Warns if {@link ReturnToPoolInterceptor} is not enabled
+     * as instances borrowed through client proxies are then only given back by
+     * {@link PooledContext#releaseAll()}.
+     *
+     * @param adv {@link AfterDeploymentValidation} event
+     * @param beanManager the bean manager
+     */
+    public void afterDeploymentValidation(@Observes final AfterDeploymentValidation adv,
+                                          final BeanManager beanManager) {
+        if (pooledBeansFound && beanManager.resolveInterceptors(InterceptionType.AROUND_INVOKE,
+                ReturnToPoolAnnotatedType.RETURN_TO_POOL).isEmpty()) {
+            log.warn("{} is not enabled, pooled instances are not given back automatically.",
+                     ReturnToPoolInterceptor.class.getName());
+        }
+        context.start(beanManager);
+    }
+
+    /**
+     * Closes the pools before the container shuts down.
+     *
+     * @param bs {@link BeforeShutdown} event
+     */
+    public void beforeShutdown(@Observes final BeforeShutdown bs) {
+        context.shutdown();
+    }
+
+}
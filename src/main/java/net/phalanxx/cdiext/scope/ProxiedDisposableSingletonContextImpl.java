@@ -0,0 +1,43 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Context implementation for the {@link ProxiedDisposableSingleton} scope.
+ * <p/>
+ * The client proxies resolve their target on every invocation. The current instance of a bean is kept in its
+ * slot, so the lookup is a single map probe followed by a volatile read, and a disposal invalidates the
+ * target for all proxies at once.
+ *
+ * @author rbachlec
+ */
+public class ProxiedDisposableSingletonContextImpl extends DisposableSingletonContextImpl {
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends Annotation> getScope() {
+        return ProxiedDisposableSingleton.class;
+    }
+
+}
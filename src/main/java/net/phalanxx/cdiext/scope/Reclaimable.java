@@ -0,0 +1,52 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link DisposableSingleton} bean whose instance may be reclaimed by the garbage collector. The
+ * context only holds a soft or weak reference to the instance and creates it again on demand once it has
+ * been collected. Use it for large instances that can be rebuilt at any time.
+ * <p/>
+ * An instance can only be collected if the creational context used to create it does not keep it reachable,
+ * the context holds the creational context strongly to release it once the instance has been collected or
+ * destroyed. Weld 1.1 keeps every instance reachable through its creational context, so on Weld the instances
+ * of reclaimable beans are never collected and behave like those of any other bean.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Reclaimable {
+
+    /**
+     * Strength of the reference the context holds to the instance.
+     *
+     * @return reference strength
+     */
+    ReferenceStrength value() default ReferenceStrength.SOFT;
+
+}
@@ -0,0 +1,54 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Refreshes the instance of a {@link DisposableSingleton} or {@link ProxiedDisposableSingleton} bean in the
+ * background whenever one of the given files changes. A burst of changes results in a single refresh once the
+ * files have been quiet for the debounce period. Beans without an instance are not refreshed.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RefreshOnFileChange {
+
+    /**
+     * Paths of the files the instance is built from, relative paths are resolved against the working directory.
+     *
+     * @return file paths
+     */
+    String[] value();
+
+    /**
+     * Milliseconds the files have to be unchanged before the instance is refreshed.
+     *
+     * @return debounce period
+     */
+    long debounceMillis() default 500;
+
+}
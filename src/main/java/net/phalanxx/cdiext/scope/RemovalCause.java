@@ -0,0 +1,49 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+/**
+ * Reasons for removing an instance from the {@link DisposableSingleton} context.
+ *
+ * @author rbachlec
+ */
+public enum RemovalCause {
+
+    /** The instance has been disposed explicitly. */
+    EXPLICIT,
+
+    /** The instance has expired according to the {@link Expiration} of its bean. */
+    EXPIRED,
+
+    /** The instance has been evicted because the maximum size or weight of the context has been exceeded. */
+    SIZE,
+
+    /** The {@link Reclaimable} instance has been collected by the garbage collector. */
+    COLLECTED,
+
+    /** The instance has been replaced by a refreshed instance and its grace period has elapsed. */
+    REPLACED,
+
+    /** The instance has been destroyed because the container shuts down. */
+    SHUTDOWN
+
+}
@@ -0,0 +1,43 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import javax.enterprise.inject.spi.Bean;
+
+/**
+ * Listener notified about instances removed from the {@link DisposableSingleton} context. The listener is
+ * called right before the removed instance is destroyed.
+ *
+ * @author rbachlec
+ */
+public interface RemovalListener {
+
+    /**
+     * Called when an instance has been removed from the context.
+     *
+     * @param bean bean of the instance
+     * @param instance the removed instance, null if it has been {@link RemovalCause#COLLECTED collected}
+     * @param cause why the instance has been removed
+     */
+    void onRemoval(Bean<?> bean, Object instance, RemovalCause cause);
+
+}
@@ -0,0 +1,126 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.enterprise.inject.spi.AnnotatedConstructor;
+import javax.enterprise.inject.spi.AnnotatedField;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.enterprise.util.AnnotationLiteral;
+
+/**
+ * Annotated type of a {@link Pooled} bean class with the {@link ReturnToPool} interceptor binding added.
+ *
+ * @author rbachlec
+ * @param <X> type of the bean class
+ */
+class ReturnToPoolAnnotatedType<X> implements AnnotatedType<X> {
+
+    static final ReturnToPool RETURN_TO_POOL = new ReturnToPoolLiteral();
+
+    private final AnnotatedType<X> delegate;
+    private final Set<Annotation> annotations;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the annotated type of the bean class
+     */
+    public ReturnToPoolAnnotatedType(final AnnotatedType<X> delegate) {
+        this.delegate = delegate;
+        Set<Annotation> allAnnotations = new HashSet<>(delegate.getAnnotations());
+        allAnnotations.add(RETURN_TO_POOL);
+        this.annotations = Collections.unmodifiableSet(allAnnotations);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<X> getJavaClass() {
+        return delegate.getJavaClass();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<AnnotatedConstructor<X>> getConstructors() {
+        return delegate.getConstructors();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<AnnotatedMethod<? super X>> getMethods() {
+        return delegate.getMethods();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<AnnotatedField<? super X>> getFields() {
+        return delegate.getFields();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Type getBaseType() {
+        return delegate.getBaseType();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Type> getTypeClosure() {
+        return delegate.getTypeClosure();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <T extends Annotation> T getAnnotation(final Class<T> annotationType) {
+        if (ReturnToPool.class.equals(annotationType)) {
+            return annotationType.cast(RETURN_TO_POOL);
+        }
+        return delegate.getAnnotation(annotationType);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Annotation> getAnnotations() {
+        return annotations;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isAnnotationPresent(final Class<? extends Annotation> annotationType) {
+        return ReturnToPool.class.equals(annotationType) || delegate.isAnnotationPresent(annotationType);
+    }
+
+    /**
+     * Annotation literal of {@link ReturnToPool}.
+     */
+    private static final class ReturnToPoolLiteral extends AnnotationLiteral<ReturnToPool>
+            implements ReturnToPool {
+        private static final long serialVersionUID = 1L;
+    }
+
+}
@@ -0,0 +1,63 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+/**
+ * Interceptor giving back the instance of a {@link Pooled} bean to its pool once the outermost invocation on
+ * the instance has returned, so a thread only holds an instance while it is actually using it. Instances
+ * borrowed explicitly using {@link PooledContext#getPooled(Class)} are not given back.
+ *
+ * @author rbachlec
+ */
+@ReturnToPool
+@Interceptor
+public class ReturnToPoolInterceptor {
+
+    @Inject private BeanManager beanManager;
+
+    /**
+     * Invokes the target and gives back its instance afterwards.
+     *
+     * @param invocationContext the invocation context
+     * @return result of the invocation
+     * @throws Exception exception thrown by the invocation
+     */
+    @AroundInvoke
+    public Object returnToPool(final InvocationContext invocationContext) throws Exception {
+        PooledContextImpl context = (PooledContextImpl) beanManager.getContext(Pooled.class);
+        PooledContextImpl.Lease<?> lease = context.enter(invocationContext.getTarget());
+        try {
+            return invocationContext.proceed();
+        } finally {
+            if (lease != null) {
+                context.exit(lease);
+            }
+        }
+    }
+
+}
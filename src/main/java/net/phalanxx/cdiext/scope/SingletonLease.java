@@ -0,0 +1,53 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+/**
+ * Lease of a {@link DisposableSingleton} instance obtained from {@link DisposableSingletonContext#acquire}. The
+ * instance is not destroyed before the lease has been closed, even if it is disposed meanwhile. Leases are
+ * meant to be used with try-with-resources:
+ * <pre>
+ * try (SingletonLease&lt;Index&gt; lease = context.acquire(Index.class)) {
+ *     lease.get().search(query);
+ * }
+ * </pre>
+ *
+ * @author rbachlec
+ * @param <T> type of the leased instance
+ */
+public interface SingletonLease<T> extends AutoCloseable {
+
+    /**
+     * Returns the leased instance.
+     *
+     * @return instance
+     */
+    T get();
+
+    /**
+     * Closes the lease. If the instance has been disposed and this was its last lease, the instance is
+     * destroyed in the background.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,52 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link DisposableSingleton} bean whose instance is written to a snapshot at shutdown or on demand
+ * and restored from it instead of being created on the next start. The instance must be serializable.
+ * Snapshots are only written and restored once a snapshot directory has been set using
+ * {@link DisposableSingletonContext#setSnapshotDirectory} or the system property
+ * {@value DisposableSingletonExtension#SNAPSHOT_DIRECTORY_PROPERTY}.
+ * <p/>
+ * Restored instances of managed beans are injected again, but their post construct callbacks are not
+ * called. Fields holding injected references should therefore be transient.
+ *
+ * @author rbachlec
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Snapshot {
+
+    /**
+     * Version of the state of the instance. Snapshots written with another version are ignored.
+     *
+     * @return version
+     */
+    String version();
+
+}
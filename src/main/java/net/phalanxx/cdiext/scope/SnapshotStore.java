@@ -0,0 +1,273 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import javax.enterprise.inject.spi.Bean;
+
+/**
+ * Writes snapshots of instances to files in a directory and reads them back from memory mapped files.
+ * <p/>
+ * Every bean has its own file named after its bean class and a hash of its qualifiers. A file holds a magic
+ * number, the key and the version of the bean followed by the serialized instance. Files are written to a
+ * temporary file first and then moved over the previous snapshot.
+ * <p/>
+ * Reading a snapshot only resolves the bean class and its subclasses, the types of the serializable fields of
+ * these classes and some value and collection classes of the JDK. All other classes are rejected, so a
+ * tampered snapshot file cannot instantiate arbitrary serializable classes.
+ *
+ * @author rbachlec
+ */
+final class SnapshotStore {
+
+    private static final int MAGIC = 0x43445353;
+
+    /** JDK classes allowed in snapshots besides the types of the serializable fields. */
+    private static final Set<String> ALLOWED_JDK_CLASSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double", "java.lang.Enum",
+            "java.lang.Float", "java.lang.Integer", "java.lang.Long", "java.lang.Number", "java.lang.Short",
+            "java.lang.String", "java.math.BigDecimal", "java.math.BigInteger", "java.util.ArrayDeque",
+            "java.util.ArrayList", "java.util.Date", "java.util.HashMap", "java.util.HashSet",
+            "java.util.LinkedHashMap", "java.util.LinkedHashSet", "java.util.LinkedList", "java.util.TreeMap",
+            "java.util.TreeSet")));
+
+    private final Path directory;
+
+    /**
+     * Creates the store of a directory.
+     *
+     * @param directory directory holding the snapshots
+     */
+    SnapshotStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes the snapshot of an instance.
+     *
+     * @param bean bean of the instance
+     * @param version version of the state
+     * @param instance the instance
+     * @throws IOException if the snapshot could not be written
+     */
+    void write(final Bean<?> bean, final String version, final Object instance) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeUTF(BeanKey.of(bean));
+        header.writeUTF(version);
+        header.flush();
+        ObjectOutputStream payload = new ObjectOutputStream(bytes);
+        payload.writeObject(instance);
+        payload.close();
+
+        Files.createDirectories(directory);
+        Path file = file(bean);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the snapshot of an instance.
+     *
+     * @param bean bean of the instance
+     * @param version expected version of the state
+     * @return the restored instance or null if there is no snapshot of this bean and version
+     * @throws IOException if the snapshot could not be read
+     * @throws ClassNotFoundException if a class of the snapshot could not be found
+     */
+    Object read(final Bean<?> bean, final String version) throws IOException, ClassNotFoundException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file(bean), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+
+        DataInputStream header = new DataInputStream(new ByteBufferInputStream(buffer));
+        if (buffer.remaining() < 4 || header.readInt() != MAGIC || !BeanKey.of(bean).equals(header.readUTF())
+                || !version.equals(header.readUTF())) {
+            return null;
+        }
+        try (ObjectInputStream payload = new BeanObjectInputStream(header, bean.getBeanClass())) {
+            return payload.readObject();
+        }
+    }
+
+    /**
+     * Returns the bean class, its superclasses and the types of the serializable fields of these classes,
+     * following the field types declared outside of the JDK.
+     *
+     * @param beanClass the bean class
+     * @return classes allowed in a snapshot of the bean
+     */
+    private static Set<Class<?>> getFieldTypes(final Class<?> beanClass) {
+        Set<Class<?>> fieldTypes = new HashSet<>();
+        Queue<Class<?>> pending = new ArrayDeque<>();
+        pending.add(beanClass);
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (type.isPrimitive() || !fieldTypes.add(type) || type.getName().startsWith("java.")) {
+                continue;
+            }
+
+            for (Class<?> clazz = type; clazz != null && Serializable.class.isAssignableFrom(clazz);
+                 clazz = clazz.getSuperclass()) {
+                pending.add(clazz);
+                for (Field field : clazz.getDeclaredFields()) {
+                    if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0) {
+                        pending.add(field.getType());
+                    }
+                }
+            }
+        }
+        return fieldTypes;
+    }
+
+    private Path file(final Bean<?> bean) {
+        return directory.resolve(bean.getBeanClass().getName() + "-"
+                                 + Integer.toHexString(BeanKey.of(bean).hashCode()) + ".snapshot");
+    }
+
+    /**
+     * Input stream reading a byte buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Object input stream resolving classes using the class loader of the bean. Only the bean class and its
+     * subclasses, the types of its serializable fields and the allowed JDK classes are resolved.
+     */
+    private static final class BeanObjectInputStream extends ObjectInputStream {
+        private final Class<?> beanClass;
+        private final Set<Class<?>> fieldTypes;
+
+        public BeanObjectInputStream(final InputStream in, final Class<?> beanClass) throws IOException {
+            super(in);
+            this.beanClass = beanClass;
+            this.fieldTypes = getFieldTypes(beanClass);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(desc.getName(), false, beanClass.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                clazz = super.resolveClass(desc);
+            }
+
+            if (!isAllowed(clazz)) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in a snapshot of "
+                                                                + beanClass.getName() + ".");
+            }
+            return clazz;
+        }
+
+        /**
+         * Checks if the given class may be read from a snapshot of the bean.
+         *
+         * @param clazz the class
+         * @return true/false
+         */
+        private boolean isAllowed(final Class<?> clazz) {
+            Class<?> type = clazz;
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            return type.isPrimitive() || beanClass.isAssignableFrom(type) || fieldTypes.contains(type)
+                   || ALLOWED_JDK_CLASSES.contains(type.getName());
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.inject.Scope;
+
+/**
+ * Scope keeping one instance per thread, meant for costly non-thread-safe helpers like formatters, parsers or
+ * digests. The instances can be disposed manually by using an injected instance of
+ * {@link ThreadSingletonContext}. They are destroyed when the thread calls
+ * {@link ThreadSingletonContext#endThread()} or, at the latest, once the thread has terminated.
+ * <p/>
+ * As for {@link DisposableSingleton} injected references are not proxied, so instances must not be injected
+ * into beans shared between threads.
+ *
+ * @author rbachlec
+ */
+@Scope
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface ThreadSingleton {
+}
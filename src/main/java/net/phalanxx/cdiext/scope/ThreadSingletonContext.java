@@ -0,0 +1,148 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+
+/**
+ * This class can be used to obtain or dispose the {@link ThreadSingleton} instance of the current thread for a
+ * given class.
+ *
+ * @author rbachlec
+ */
+public class ThreadSingletonContext {
+
+    @Inject private BeanManager beanManager;
+
+    private ThreadSingletonContextImpl context;
+
+    /**
+     * If the current thread has already got an instance for the given type this instance is returned.
+     * Otherwise a new instance is created and put in the {@link ThreadSingleton} context.
+     *
+     * @param <T> type of singleton to be created
+     * @param type class of singleton to be created
+     * @return thread singleton instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getSingleton(final Class<T> type) {
+        T result = null;
+        Bean<T> bean = (Bean<T>) beanManager.resolve(beanManager.getBeans(type));
+
+        if (bean != null && ThreadSingleton.class.equals(bean.getScope())) {
+            CreationalContext<T> creationalContext = beanManager.createCreationalContext(bean);
+            result = (T) beanManager.getReference(bean, type, creationalContext);
+        }
+        return result;
+    }
+
+    /**
+     * Disposes a given instance of the current thread. If the given object is not an instance of the current
+     * thread in the {@link ThreadSingleton} context an exception is thrown.
+     *
+     * @param <T> type of the given singleton
+     * @param singleton thread singleton instance
+     */
+    public <T> void disposeSingleton(final T singleton) {
+        getContext().dispose(singleton);
+    }
+
+    /**
+     * Disposes the instances of all threads in the {@link ThreadSingleton} context. Instances of other threads
+     * are destroyed by their thread on its next access of the context.
+     *
+     * @return number of disposed instances
+     */
+    public int disposeAll() {
+        return disposeMatching(new BeanFilter() {
+            @Override
+            public boolean matches(final Bean<?> bean) {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Disposes the instances of all threads of all beans having the given type and qualifiers.
+     *
+     * @param type type of the singletons to be disposed
+     * @param qualifiers List of qualifier annotations
+     * @return number of disposed instances
+     */
+    public int dispose(final Class<?> type, final Annotation... qualifiers) {
+        final Set<Bean<?>> beans = beanManager.getBeans(type, qualifiers);
+        return disposeMatching(new BeanFilter() {
+            @Override
+            public boolean matches(final Bean<?> bean) {
+                return beans.contains(bean);
+            }
+        });
+    }
+
+    /**
+     * Disposes the instances of all threads of all beans matching the given filter.
+     *
+     * @param filter filter selecting the beans whose instances are to be disposed
+     * @return number of disposed instances
+     */
+    public int disposeMatching(final BeanFilter filter) {
+        return getContext().disposeMatching(filter);
+    }
+
+    /**
+     * Destroys all instances of the current thread. Should be called when the thread's work ends, for example
+     * at the end of a request or of a task run by a pooled thread.
+     */
+    public void endThread() {
+        getContext().endThread();
+    }
+
+    /**
+     * Checks if the given object is an instance of the current thread in the {@link ThreadSingleton} context.
+     *
+     * @param <T> type of the object to search for
+     * @param singleton object to be searched for
+     * @return true/false
+     */
+    public <T> Boolean contains(final T singleton) {
+        return getContext().contains(singleton);
+    }
+
+    /**
+     * Returns the context of the {@link ThreadSingleton} scope. The context is looked up only once.
+     *
+     * @return the context implementation
+     */
+    private ThreadSingletonContextImpl getContext() {
+        if (context == null) {
+            context = (ThreadSingletonContextImpl) beanManager.getContext(ThreadSingleton.class);
+        }
+        return context;
+    }
+
+}
@@ -0,0 +1,343 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.lang.annotation.Annotation;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.spi.Context;
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Context implementation for the {@link ThreadSingleton} scope.
+ * <p/>
+ * Every thread keeps its instances in its own map reached through a thread local, so lookups and creations
+ * never synchronize with other threads. Instances are only destroyed by their own thread while it is alive:
+ * instances of other threads disposed in bulk are removed immediately but handed over to their thread, which
+ * destroys them on its next access of the context. Instances of threads which have ended or terminated are
+ * destroyed by the disposing thread. The instances of terminated threads are destroyed when the next thread
+ * starts using the context or instances are disposed in bulk.
+ * <p/>
+ * On container shutdown the instances of all threads, including the ones still running, are destroyed by the
+ * thread shutting down the container.
+ *
+ * @author rbachlec
+ */
+public class ThreadSingletonContextImpl implements Context {
+
+    private final Logger log = LoggerFactory.getLogger(ThreadSingletonContextImpl.class);
+
+    /** Instances of all threads using the context. */
+    private final ConcurrentHashMap<Thread, ThreadInstances> threads = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<ThreadInstances> currentThreadInstances = new ThreadLocal<>();
+
+    /** {@inheritDoc} */
+    @Override
+    public Class<? extends Annotation> getScope() {
+        return ThreadSingleton.class;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T get(final Contextual<T> contextual, final CreationalContext<T> creationalContext) {
+        Bean<T> bean = (Bean<T>) contextual;
+        ThreadInstances threadInstances = getThreadInstances();
+
+        ThreadInstance<T> threadInstance = (ThreadInstance<T>) threadInstances.instances.get(bean);
+        if (threadInstance != null) {
+            return threadInstance.instance;
+        }
+
+        if (!threadInstances.creating.add(bean)) {
+            throw new IllegalStateException("Circular creation of bean " + bean + " detected.");
+        }
+        try {
+            log.debug("Creating instance of bean {} for thread {}.", bean, threadInstances.thread.getName());
+            T instance = bean.create(creationalContext);
+            threadInstances.instances.put(bean, new ThreadInstance<>(bean, instance, creationalContext));
+            return instance;
+        } finally {
+            threadInstances.creating.remove(bean);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T get(final Contextual<T> contextual) {
+        ThreadInstances threadInstances = currentThreadInstances.get();
+        if (threadInstances == null) {
+            return null;
+        }
+
+        threadInstances.destroyPending();
+        ThreadInstance<T> threadInstance = (ThreadInstance<T>) threadInstances.instances.get(contextual);
+        return threadInstance == null ? null : threadInstance.instance;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    /**
+     * Removes and destroys the given instance of the current thread.
+     *
+     * @param <T> type of the instance to be removed
+     * @param instance the instance to be removed
+     */
+    protected <T> void dispose(final T instance) {
+        ThreadInstances threadInstances = currentThreadInstances.get();
+        ThreadInstance<?> threadInstance = threadInstances == null ? null : threadInstances.find(instance);
+        if (threadInstance == null || !threadInstances.instances.remove(threadInstance.bean, threadInstance)) {
+            throw new IllegalArgumentException("The given instance could not be found in " +
+                                               "the ThreadSingletonContext of the current thread.");
+        }
+        destroy(threadInstance);
+    }
+
+    /**
+     * Checks if the given object is an instance of the current thread in the {@link ThreadSingleton} context.
+     *
+     * @param <T> type of the object to search for
+     * @param instance object to be searched for
+     * @return true/false
+     */
+    protected <T> Boolean contains(final T instance) {
+        ThreadInstances threadInstances = currentThreadInstances.get();
+        return threadInstances != null && threadInstances.find(instance) != null;
+    }
+
+    /**
+     * Removes the instances of all beans matching the given filter from all threads. Instances of the current
+     * thread and of terminated threads are destroyed immediately, the others by their thread on its next
+     * access of the context.
+     *
+     * @param filter filter selecting the beans whose instances are to be disposed
+     * @return number of disposed instances
+     */
+    protected int disposeMatching(final BeanFilter filter) {
+        destroyTerminatedThreads();
+        Thread currentThread = Thread.currentThread();
+        int disposed = 0;
+        for (ThreadInstances threadInstances : threads.values()) {
+            for (ThreadInstance<?> threadInstance : threadInstances.instances.values()) {
+                if (filter.matches(threadInstance.bean)
+                        && threadInstances.instances.remove(threadInstance.bean, threadInstance)) {
+                    disposed++;
+                    if (threadInstances.thread == currentThread || threadInstances.isEnded()) {
+                        destroy(threadInstance);
+                    } else {
+                        threadInstances.pending.add(threadInstance);
+                        if (threadInstances.isEnded()) {
+                            // the thread has ended meanwhile and will not destroy its pending instances anymore
+                            threadInstances.destroyPending();
+                        }
+                    }
+                }
+            }
+        }
+        return disposed;
+    }
+
+    /**
+     * Destroys all instances of the current thread and forgets the thread. Should be called when the thread's
+     * work ends, for example at the end of a request or a task run by a pooled thread.
+     */
+    protected void endThread() {
+        ThreadInstances threadInstances = currentThreadInstances.get();
+        if (threadInstances != null) {
+            currentThreadInstances.remove();
+            threadInstances.ended = true;
+            threads.remove(threadInstances.thread);
+            destroyAll(threadInstances);
+        }
+    }
+
+    /**
+     * Destroys the instances of all threads. Called when the container shuts down. The instances of threads
+     * still running are destroyed by the calling thread, not by their own thread.
+     */
+    void shutdown() {
+        destroyTerminatedThreads();
+        for (ThreadInstances threadInstances : threads.values()) {
+            threadInstances.ended = true;
+            threads.remove(threadInstances.thread);
+            destroyAll(threadInstances);
+        }
+    }
+
+    /**
+     * Returns the instances of the current thread, registering the thread on its first access. Pending
+     * destructions handed over by other threads are run.
+     *
+     * @return instances of the current thread
+     */
+    private ThreadInstances getThreadInstances() {
+        ThreadInstances threadInstances = currentThreadInstances.get();
+        if (threadInstances == null) {
+            threadInstances = new ThreadInstances(Thread.currentThread());
+            currentThreadInstances.set(threadInstances);
+            threads.put(threadInstances.thread, threadInstances);
+            destroyTerminatedThreads();
+        } else {
+            threadInstances.destroyPending();
+        }
+        return threadInstances;
+    }
+
+    /**
+     * Destroys the instances of all threads which have terminated without calling {@link #endThread()}.
+     */
+    private void destroyTerminatedThreads() {
+        for (ThreadInstances threadInstances : threads.values()) {
+            if (!threadInstances.thread.isAlive() && threads.remove(threadInstances.thread, threadInstances)) {
+                threadInstances.ended = true;
+                log.debug("Destroying instances of terminated thread {}.", threadInstances.thread.getName());
+                destroyAll(threadInstances);
+            }
+        }
+    }
+
+    /**
+     * Destroys all instances of a thread which has ended and is no longer registered.
+     *
+     * @param threadInstances instances of the thread
+     */
+    private void destroyAll(final ThreadInstances threadInstances) {
+        threadInstances.destroyPending();
+        for (ThreadInstance<?> threadInstance : threadInstances.instances.values()) {
+            if (threadInstances.instances.remove(threadInstance.bean, threadInstance)) {
+                destroy(threadInstance);
+            }
+        }
+        threadInstances.destroyPending();
+    }
+
+    /**
+     * Destroys an instance which has already been removed. Failures are logged only.
+     *
+     * @param <T> type of the bean
+     * @param threadInstance the removed instance
+     */
+    private <T> void destroy(final ThreadInstance<T> threadInstance) {
+        log.debug("Disposing instance of bean {}.", threadInstance.bean);
+        try {
+            threadInstance.bean.destroy(threadInstance.instance, threadInstance.creationalContext);
+        } catch (RuntimeException ex) {
+            log.error("Destroying instance of bean " + threadInstance.bean + " failed.", ex);
+        }
+    }
+
+    /**
+     * Instances of a single thread.
+     */
+    private final class ThreadInstances {
+        private final Thread thread;
+        private final ConcurrentMap<Bean<?>, ThreadInstance<?>> instances = new ConcurrentHashMap<>();
+        private final Set<Bean<?>> creating = new HashSet<>();
+        private final Queue<ThreadInstance<?>> pending = new ConcurrentLinkedQueue<>();
+        /** Set once the instances of the thread are destroyed, pending instances are not run by it anymore. */
+        private volatile boolean ended;
+
+        public ThreadInstances(final Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Checks if the thread has ended its work or terminated, so it will not destroy pending instances.
+         *
+         * @return true/false
+         */
+        public boolean isEnded() {
+            return ended || !thread.isAlive();
+        }
+
+        /**
+         * Returns the given instance of the thread.
+         *
+         * @param instance the instance
+         * @return the instance with its bean or null if the instance does not belong to the thread
+         */
+        public ThreadInstance<?> find(final Object instance) {
+            for (ThreadInstance<?> threadInstance : instances.values()) {
+                if (threadInstance.instance == instance) {
+                    return threadInstance;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Destroys the instances disposed by other threads.
+         */
+        public void destroyPending() {
+            ThreadInstance<?> threadInstance;
+            while ((threadInstance = pending.poll()) != null) {
+                destroy(threadInstance);
+            }
+        }
+    }
+
+    /**
+     * Instance of a bean created for a single thread.
+     *
+     * @param <T> type of the bean
+     */
+    private static final class ThreadInstance<T> implements ContextualInstance<T> {
+        private final Bean<T> bean;
+        private final T instance;
+        private final CreationalContext<T> creationalContext;
+
+        public ThreadInstance(final Bean<T> bean, final T instance, final CreationalContext<T> creationalContext) {
+            this.bean = bean;
+            this.instance = instance;
+            this.creationalContext = creationalContext;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public T getInstance() {
+            return instance;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CreationalContext<T> getCreationalContext() {
+            return creationalContext;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel driven by a single scheduled thread. Timers are put into the bucket of the tick
+ * they are due in. Timers due more than one revolution ahead are simply checked and put back on every
+ * revolution, so scheduling and expiring is cheap no matter how many timers are pending.
+ *
+ * @author rbachlec
+ */
+class TimerWheel {
+
+    private final ScheduledExecutorService executor;
+    private final long tickNanos;
+    private final List<Queue<Timer>> buckets;
+    private final int mask;
+
+    private volatile long processedTick;
+    private boolean started;
+
+    /**
+     * Creates a timer wheel. The wheel starts ticking when the first timer is scheduled.
+     *
+     * @param executor executor running the ticks
+     * @param tick duration of a tick
+     * @param unit unit of the tick duration
+     * @param size number of buckets, rounded up to the next power of two
+     */
+    TimerWheel(final ScheduledExecutorService executor, final long tick, final TimeUnit unit, final int size) {
+        this.executor = executor;
+        this.tickNanos = unit.toNanos(tick);
+
+        int bucketCount = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ConcurrentLinkedQueue<Timer>());
+        }
+        this.mask = bucketCount - 1;
+        this.processedTick = System.nanoTime() / tickNanos;
+    }
+
+    /**
+     * Schedules the given timer. If the bucket of the timer is processed while the timer is added, the timer is
+     * moved to the bucket following the tick being processed, so it does not wait a whole revolution.
+     *
+     * @param timer timer to be scheduled
+     * @param deadline {@link System#nanoTime()} at which the timer is due
+     */
+    void schedule(final Timer timer, final long deadline) {
+        ensureStarted();
+
+        long dueTick = deadline / tickNanos + 1;
+        while (true) {
+            long tick = Math.max(dueTick, processedTick + 1);
+            Queue<Timer> bucket = buckets.get((int) (tick & mask));
+            bucket.add(timer);
+            if (processedTick < tick || !bucket.remove(timer)) {
+                // the bucket has not been processed yet or the timer has already been taken out of it
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts ticking unless already done.
+     */
+    private synchronized void ensureStarted() {
+        if (!started) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    advance(System.nanoTime());
+                }
+            }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+            started = true;
+        }
+    }
+
+    /**
+     * Processes all buckets due until the given time. Timers which are not yet expired are scheduled again.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    void advance(final long now) {
+        long currentTick = now / tickNanos;
+        long tick = processedTick;
+        long lastTick = Math.min(currentTick, tick + buckets.size());
+
+        while (tick < lastTick) {
+            tick++;
+            // published before the bucket is drained, so timers added from now on are checked by schedule
+            processedTick = tick;
+            List<Timer> dueTimers = new ArrayList<>();
+            Queue<Timer> bucket = buckets.get((int) (tick & mask));
+            for (Timer timer = bucket.poll(); timer != null; timer = bucket.poll()) {
+                dueTimers.add(timer);
+            }
+
+            for (Timer timer : dueTimers) {
+                long deadline = timer.expire(now);
+                if (deadline != Timer.DONE) {
+                    schedule(timer, deadline);
+                }
+            }
+        }
+        processedTick = currentTick;
+    }
+
+    /**
+     * A timer managed by the wheel.
+     */
+    interface Timer {
+
+        /** Returned by {@link #expire(long)} if the timer is not to be scheduled again. */
+        long DONE = Long.MIN_VALUE;
+
+        /**
+         * Called when the bucket of the timer is due. The timer either expires or returns its new deadline.
+         *
+         * @param now current {@link System#nanoTime()}
+         * @return new deadline or {@link #DONE}
+         */
+        long expire(long now);
+    }
+
+}
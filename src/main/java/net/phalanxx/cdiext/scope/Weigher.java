@@ -0,0 +1,43 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import javax.enterprise.inject.spi.Bean;
+
+/**
+ * Calculates the weight of a {@link DisposableSingleton} instance, e.g. its estimated size in bytes. The
+ * weights of all instances are limited by the maximum weight of the context.
+ *
+ * @author rbachlec
+ */
+public interface Weigher {
+
+    /**
+     * Returns the weight of the given instance. The weight is calculated once after creation.
+     *
+     * @param bean bean of the instance
+     * @param instance the instance
+     * @return weight, not negative
+     */
+    long weigh(Bean<?> bean, Object instance);
+
+}
@@ -22,6 +22,9 @@ package net.phalanxx.cdiext.util;
 
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -134,6 +137,38 @@ public final class AnnotationUtil {
         return annotations;
     }
 
+    /**
+     * Creates an instance of an annotation type without members, e.g. of a qualifier only known by its class.
+     * The instance is equal to all other instances of the annotation type.
+     *
+     * @param <T> type of the annotation
+     * @param annotationType class of the annotation
+     * @return annotation instance
+     */
+    public static <T extends Annotation> T newInstance(final Class<T> annotationType) {
+        if (annotationType.getDeclaredMethods().length > 0) {
+            throw new IllegalArgumentException("Annotation " + annotationType.getName() + " has members.");
+        }
+
+        return annotationType.cast(Proxy.newProxyInstance(annotationType.getClassLoader(),
+                new Class<?>[] {annotationType}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                switch (method.getName()) {
+                    case "annotationType":
+                        return annotationType;
+                    case "equals":
+                        return args[0] instanceof Annotation
+                               && annotationType.equals(((Annotation) args[0]).annotationType());
+                    case "hashCode":
+                        return 0;
+                    default:
+                        return "@" + annotationType.getName() + "()";
+                }
+            }
+        }));
+    }
+
     /**
      * Searches the given annotated type for matching annotations according to the given filter implementation.
      *
@@ -0,0 +1,66 @@
+package net.phalanxx.cdiext.beans;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import net.phalanxx.cdiext.factory.BatchFactory;
+import net.phalanxx.cdiext.factory.DefaultFactory;
+
+@ApplicationScoped
+public class ApplicationScopedFactory implements BatchFactory {
+
+    private static final AtomicInteger FACTORY_IDS = new AtomicInteger();
+
+    private final DefaultFactory defaultFactory = new DefaultFactory();
+
+    private int factoryId;
+
+    @PostConstruct
+    public void init() {
+        factoryId = FACTORY_IDS.incrementAndGet();
+    }
+
+    @Override
+    public <T> T createInstance(Class<T> clazz) {
+        T bean = defaultFactory.createInstance(clazz);
+        ((BeanProducedByApplicationScopedFactory) bean).setFactoryId(factoryId);
+
+        return bean;
+    }
+
+    @Override
+    public <T> List<T> createInstances(Class<T> clazz, int count) {
+        List<T> beans = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            T bean = createInstance(clazz);
+            ((BeanProducedByApplicationScopedFactory) bean).setCreatedInBatch(true);
+            beans.add(bean);
+        }
+        return beans;
+    }
+}
@@ -0,0 +1,58 @@
+package net.phalanxx.cdiext.beans;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+public abstract class BlockingThreadSingletonBean {
+
+    private final CountDownLatch destroying = new CountDownLatch(1);
+    private final CountDownLatch proceed = new CountDownLatch(1);
+    private volatile boolean destroyed;
+
+    @PreDestroy
+    public void destroy() {
+        destroying.countDown();
+        try {
+            proceed.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        destroyed = true;
+    }
+
+    public boolean isDestroying() {
+        return destroying.getCount() == 0;
+    }
+
+    public void proceed() {
+        proceed.countDown();
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+}
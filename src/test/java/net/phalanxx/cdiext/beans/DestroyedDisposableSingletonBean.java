@@ -0,0 +1,49 @@
+package net.phalanxx.cdiext.beans;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PreDestroy;
+
+import net.phalanxx.cdiext.scope.DisposableSingleton;
+
+@DisposableSingleton
+public class DestroyedDisposableSingletonBean {
+
+    private static final List<Class<?>> DESTROYED_BEANS = new CopyOnWriteArrayList<>();
+
+    @PreDestroy
+    public void destroy() {
+        DESTROYED_BEANS.add(DestroyedDisposableSingletonBean.class);
+    }
+
+    public static void beanDestroyed(final Class<?> beanClass) {
+        DESTROYED_BEANS.add(beanClass);
+    }
+
+    public static List<Class<?>> getDestroyedBeans() {
+        return DESTROYED_BEANS;
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.phalanxx.cdiext.beans;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.phalanxx.cdiext.scope.PoolSize;
+import net.phalanxx.cdiext.scope.Pooled;
+
+@Pooled
+@PoolSize(min = 1, max = 2, maxWait = 200, unit = TimeUnit.MILLISECONDS)
+public class PooledBean {
+
+    private static final AtomicInteger CREATED_INSTANCES = new AtomicInteger();
+
+    private final AtomicBoolean inUse = new AtomicBoolean();
+    private final int instanceNumber;
+
+    public PooledBean() {
+        super();
+        instanceNumber = CREATED_INSTANCES.incrementAndGet();
+    }
+
+    public static int getCreatedInstances() {
+        return CREATED_INSTANCES.get();
+    }
+
+    public int getInstanceNumber() {
+        return instanceNumber;
+    }
+
+    public int use() throws InterruptedException {
+        if (!inUse.compareAndSet(false, true)) {
+            throw new IllegalStateException("Instance is used by another thread.");
+        }
+        try {
+            Thread.sleep(1);
+            return instanceNumber;
+        } finally {
+            inUse.set(false);
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package net.phalanxx.cdiext.beans;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+
+import net.phalanxx.cdiext.scope.DisposableSingleton;
+import net.phalanxx.cdiext.scope.Snapshot;
+
+@DisposableSingleton
+@Snapshot(version = "1")
+public class SnapshotDisposableSingletonBean implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final AtomicInteger CREATED_INSTANCES = new AtomicInteger();
+
+    @Inject private transient BeanManager beanManager;
+
+    private final int instanceNumber;
+
+    public SnapshotDisposableSingletonBean() {
+        super();
+        instanceNumber = CREATED_INSTANCES.incrementAndGet();
+    }
+
+    public int getInstanceNumber() {
+        return instanceNumber;
+    }
+
+    public BeanManager getBeanManager() {
+        return beanManager;
+    }
+
+    public static int getCreatedInstances() {
+        return CREATED_INSTANCES.get();
+    }
+
+}
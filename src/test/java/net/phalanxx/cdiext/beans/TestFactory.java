@@ -21,19 +21,18 @@ package net.phalanxx.cdiext.beans;
  */
 
 
+import net.phalanxx.cdiext.factory.DefaultFactory;
 import net.phalanxx.cdiext.factory.Factory;
 
 public class TestFactory implements Factory {
 
+    private final DefaultFactory defaultFactory = new DefaultFactory();
+
     @Override
     public <T> T createInstance(Class<T> clazz) {
-        try {
-            T car = clazz.newInstance();
-            ((AbstractTestBean) car).setProducedByFactory(Boolean.TRUE);
+        T car = defaultFactory.createInstance(clazz);
+        ((AbstractTestBean) car).setProducedByFactory(Boolean.TRUE);
 
-            return car;
-        } catch (InstantiationException | IllegalAccessException ex) {
-            throw new RuntimeException("Fatal error on producing car.", ex);
-        }
+        return car;
     }
 }
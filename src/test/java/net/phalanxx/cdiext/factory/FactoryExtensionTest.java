@@ -23,11 +23,29 @@ package net.phalanxx.cdiext.factory;
 
 import static org.fest.assertions.Assertions.assertThat;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import net.phalanxx.cdiext.beans.AbstractTestBean;
 import net.phalanxx.cdiext.beans.ApplicationScopedBeanProducedByFactory;
+import net.phalanxx.cdiext.beans.BeanProducedByApplicationScopedFactory;
+import net.phalanxx.cdiext.beans.BeanProducedByDefaultFactory;
 import net.phalanxx.cdiext.beans.DependentScopedBean;
 import net.phalanxx.cdiext.beans.DependentScopedBeanProducedByFactory;
 import net.phalanxx.cdiext.beans.NamedBeanProducedByFactory;
@@ -53,13 +71,23 @@ public class FactoryExtensionTest {
 
     @Inject private DependentScopedBean dependentScopedBean;
 
+    @Inject private BeanProducedByApplicationScopedFactory beanProducedByApplicationScopedFactory;
+    @Inject private BeanProducedByApplicationScopedFactory beanProducedByApplicationScopedFactory2;
+
+    @Inject private BeanProducedByDefaultFactory beanProducedByDefaultFactory;
+
+    @Inject private BeanManager beanManager;
+
     @Deployment
     public static JavaArchive createDeployment() {
         return ShrinkWrap.create(JavaArchive.class)
                          .addClass(ProducedByFactory.class)
                          .addClass(Factory.class)
+                         .addClass(BatchFactory.class)
+                         .addClass(DefaultFactory.class)
                          .addClass(FactoryExtension.class)
                          .addClass(FactoryProducedBean.class)
+                         .addClass(FactoryProducedBeans.class)
                          .addPackage(AbstractTestBean.class.getPackage())
                          .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
     }
@@ -97,4 +125,168 @@ public class FactoryExtensionTest {
         assertThat(namedBeanProducedByFactory.getProducedByFactory()).isTrue();
     }
 
+    @Test
+    public void beansShareInternedMetadata() {
+        Bean<?> applicationScopedBean =
+                beanManager.resolve(beanManager.getBeans(ApplicationScopedBeanProducedByFactory.class));
+        Bean<?> dependentScopedBean =
+                beanManager.resolve(beanManager.getBeans(DependentScopedBeanProducedByFactory.class));
+        Bean<?> defaultFactoryBean =
+                beanManager.resolve(beanManager.getBeans(BeanProducedByDefaultFactory.class));
+        assertThat(applicationScopedBean).isInstanceOf(FactoryProducedBean.class);
+        assertThat(defaultFactoryBean).isInstanceOf(FactoryProducedBean.class).isNotSameAs(applicationScopedBean);
+        assertThat(applicationScopedBean.getQualifiers()).isSameAs(dependentScopedBean.getQualifiers());
+        assertThat(defaultFactoryBean.getQualifiers()).isSameAs(applicationScopedBean.getQualifiers());
+    }
+
+    @Test
+    public void normalScopedFactoryIsReused() {
+        assertThat(beanProducedByApplicationScopedFactory.getFactoryId()).isGreaterThan(0);
+        assertThat(beanProducedByApplicationScopedFactory.getFactoryId())
+                .isEqualTo(beanProducedByApplicationScopedFactory2.getFactoryId());
+        assertThat(beanProducedByApplicationScopedFactory).isNotSameAs(beanProducedByApplicationScopedFactory2);
+    }
+
+    @Test
+    public void normalScopedFactoryIsLookedUpOnce() {
+        List<String> calls = new ArrayList<>();
+        FactoryProducedBean<BeanProducedByApplicationScopedFactory> bean =
+                createFactoryProducedBean(BeanProducedByApplicationScopedFactory.class, calls);
+        for (int i = 0; i < 3; i++) {
+            bean.create(beanManager.createCreationalContext(bean));
+        }
+
+        assertThat(calls).containsExactly("getBeans", "resolve", "createCreationalContext", "getReference",
+                                          "isNormalScope");
+    }
+
+    @Test
+    public void dependentFactoryIsDestroyedAfterEachCreation() {
+        List<String> calls = new ArrayList<>();
+        FactoryProducedBean<DependentScopedBeanProducedByFactory> bean =
+                createFactoryProducedBean(DependentScopedBeanProducedByFactory.class, calls);
+        for (int i = 0; i < 2; i++) {
+            bean.create(beanManager.createCreationalContext(bean));
+        }
+
+        assertThat(calls).containsExactly("getBeans", "resolve",
+                                          "createCreationalContext", "getReference", "isNormalScope", "release",
+                                          "createCreationalContext", "getReference", "isNormalScope", "release");
+    }
+
+    @Test
+    public void batchFactoryCreatesInstancesAtOnce() {
+        List<BeanProducedByApplicationScopedFactory> beans =
+                FactoryProducedBeans.createInstances(beanManager, BeanProducedByApplicationScopedFactory.class, 3);
+        assertThat(beans).hasSize(3);
+        assertThat(beans.get(0)).isNotSameAs(beans.get(1));
+        for (BeanProducedByApplicationScopedFactory bean : beans) {
+            assertThat(bean.isCreatedInBatch()).isTrue();
+            assertThat(bean.getFactoryId()).isEqualTo(beanProducedByApplicationScopedFactory.getFactoryId());
+        }
+    }
+
+    @Test
+    public void factoryCreatesInstancesOneByOne() {
+        List<DependentScopedBeanProducedByFactory> beans =
+                FactoryProducedBeans.createInstances(beanManager, DependentScopedBeanProducedByFactory.class, 2);
+        assertThat(beans).hasSize(2);
+        for (DependentScopedBeanProducedByFactory bean : beans) {
+            assertThat(bean.getProducedByFactory()).isTrue();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void createInstancesRequiresFactoryProducedBean() {
+        FactoryProducedBeans.createInstances(beanManager, DependentScopedBean.class, 2);
+    }
+
+    @Test
+    public void defaultFactoryProducesBeanWithoutFactory() {
+        assertThat(beanProducedByDefaultFactory).isNotNull();
+        assertThat(beanProducedByDefaultFactory.isConstructed()).isTrue();
+    }
+
+    @Test
+    public void defaultFactoryIsNotInjectedAsFactory() {
+        for (Bean<?> bean : beanManager.getBeans(Factory.class)) {
+            assertThat(bean.getBeanClass()).isNotEqualTo(DefaultFactory.class);
+        }
+        assertThat(beanManager.getBeans(DefaultFactory.class)).hasSize(1);
+    }
+
+    @Test
+    public void indexListsOnlyClassesProducedByFactory() throws Exception {
+        InputStream index = getClass().getClassLoader().getResourceAsStream(FactoryExtension.INDEX_RESOURCE);
+        assertThat(index).isNotNull();
+
+        List<String> indexedTypes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                indexedTypes.add(line);
+            }
+        }
+        assertThat(indexedTypes).contains(NamedBeanProducedByFactory.class.getName(),
+                                          BeanProducedByDefaultFactory.class.getName());
+        assertThat(indexedTypes).excludes(DependentScopedBean.class.getName());
+    }
+
+    @Test
+    public void indexAppliesToItsArchiveOnly() throws Exception {
+        URL index = getClass().getClassLoader().getResource(FactoryExtension.INDEX_RESOURCE);
+        String archive = FactoryExtension.getArchiveLocation(index);
+        assertThat(archive).isEqualTo(
+                NamedBeanProducedByFactory.class.getProtectionDomain().getCodeSource().getLocation().toString());
+        assertThat(archive).isNotEqualTo(
+                DefaultFactory.class.getProtectionDomain().getCodeSource().getLocation().toString());
+
+        URL jarIndex = new URL("jar:file:/app/lib/beans.jar!/" + FactoryExtension.INDEX_RESOURCE);
+        assertThat(FactoryExtension.getArchiveLocation(jarIndex)).isEqualTo("file:/app/lib/beans.jar");
+    }
+
+    /**
+     * Creates a factory produced bean recording the calls to its bean manager and to the creational contexts
+     * of its factory. Calls made while computing the metadata of the bean are not recorded.
+     */
+    private <T> FactoryProducedBean<T> createFactoryProducedBean(final Class<T> beanClass,
+                                                                 final List<String> calls) {
+        BeanManager countingBeanManager = (BeanManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {BeanManager.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                calls.add(method.getName());
+                Object result = invokeDelegate(beanManager, method, args);
+                if (result instanceof CreationalContext) {
+                    final Object creationalContext = result;
+                    result = Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                    new Class<?>[] {CreationalContext.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                                throws Throwable {
+                            calls.add(method.getName());
+                            return invokeDelegate(creationalContext, method, args);
+                        }
+                    });
+                }
+                return result;
+            }
+        });
+
+        AnnotatedType<T> annotatedType = beanManager.createAnnotatedType(beanClass);
+        FactoryProducedBean<T> bean = new FactoryProducedBean<>(annotatedType,
+                                                                beanManager.createInjectionTarget(annotatedType),
+                                                                countingBeanManager);
+        calls.clear();
+        return bean;
+    }
+
+    private static Object invokeDelegate(final Object delegate, final Method method, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
 }
@@ -0,0 +1,76 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.inject.Named;
+
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+import net.phalanxx.cdiext.beans.NamedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.PooledBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.weld.literal.NamedLiteral;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class BeanKeyTest {
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(BeanKey.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Test
+    public void keyDoesNotDependOnAnnotationImplementation() {
+        Named named = NamedDisposableSingletonBean.class.getAnnotation(Named.class);
+        Set<Annotation> reflected = Collections.<Annotation>singleton(named);
+        Set<Annotation> literal = Collections.<Annotation>singleton(new NamedLiteral("namedSingleton"));
+
+        assertThat(BeanKey.of(NamedDisposableSingletonBean.class, reflected))
+                .isEqualTo(BeanKey.of(NamedDisposableSingletonBean.class, literal));
+    }
+
+    @Test
+    public void membersAreSortedByName() {
+        Set<Annotation> poolSize = Collections.<Annotation>singleton(PooledBean.class.getAnnotation(PoolSize.class));
+
+        assertThat(BeanKey.of(PooledBean.class, poolSize))
+                .isEqualTo(PooledBean.class.getName() + "[@" + PoolSize.class.getName()
+                           + "(idleTimeout=60, max=2, maxWait=200, min=1, unit=MILLISECONDS)]");
+    }
+
+}
@@ -22,18 +22,65 @@ package net.phalanxx.cdiext.scope;
 
 
 import static org.fest.assertions.Assertions.assertThat;
-
+import static org.junit.Assert.fail;
+
+import java.io.InvalidClassException;
+import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Type;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.spi.Context;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.Any;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.util.AnnotationLiteral;
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import net.phalanxx.cdiext.beans.AlternativeBean;
 import net.phalanxx.cdiext.beans.AnotherDisposableSingletonBean;
 import net.phalanxx.cdiext.beans.ApplicationScopedBean;
+import net.phalanxx.cdiext.beans.ConfigChanged;
+import net.phalanxx.cdiext.beans.DestroyedDisposableSingletonBean;
 import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+import net.phalanxx.cdiext.beans.EventDisposedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.ExpiringDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.FailingDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.FileBackedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.NamedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.PricingDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.ProxiedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.ReclaimableDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.ReentrantDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.SlowDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.SnapshotDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.Urgent;
+import net.phalanxx.cdiext.util.AnnotationUtil;
 
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
@@ -54,6 +101,7 @@ public class DisposableSingletonContextTest {
     @Inject DisposableSingletonBean singletonBean2;
     @Inject AnotherDisposableSingletonBean anotherSingletonBean;
     @Inject ApplicationScopedBean applicationScopedBean;
+    @Inject ProxiedDisposableSingletonBean proxiedSingletonBean;
 
     @Deployment
     public static JavaArchive createDeployment() {
@@ -157,6 +205,555 @@ public class DisposableSingletonContextTest {
         assertThat(beanInstance).isNull();
     }
 
+    @Test
+    public void disposingAllSingletonsWorks() {
+        assertThat(context.contains(singletonBean)).isTrue();
+        assertThat(context.contains(anotherSingletonBean)).isTrue();
+
+        assertThat(context.disposeAll()).isGreaterThanOrEqualTo(2);
+        assertThat(context.contains(singletonBean)).isFalse();
+        assertThat(context.contains(anotherSingletonBean)).isFalse();
+    }
+
+    @Test
+    public void disposingSingletonsByTypeWorks() {
+        assertThat(context.dispose(DisposableSingletonBean.class)).isEqualTo(1);
+        assertThat(context.contains(singletonBean)).isFalse();
+        assertThat(context.contains(anotherSingletonBean)).isTrue();
+
+        assertThat(context.dispose(DisposableSingletonBean.class)).isEqualTo(0);
+    }
+
+    @Test
+    public void disposingMatchingSingletonsOnExecutorWorks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            int disposed = context.disposeMatching(new BeanFilter() {
+                @Override
+                public boolean matches(final Bean<?> bean) {
+                    return AnotherDisposableSingletonBean.class.equals(bean.getBeanClass());
+                }
+            }, executor);
+
+            assertThat(disposed).isEqualTo(1);
+            assertThat(context.contains(singletonBean)).isTrue();
+            assertThat(context.contains(anotherSingletonBean)).isFalse();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    public void expiredSingletonIsCreatedAgainOnAccess() throws Exception {
+        ExpiringDisposableSingletonBean theBean = context.getSingleton(ExpiringDisposableSingletonBean.class);
+        assertThat(context.getSingleton(ExpiringDisposableSingletonBean.class)).isSameAs(theBean);
+
+        Thread.sleep(400);
+        assertThat(context.getSingleton(ExpiringDisposableSingletonBean.class)).isNotSameAs(theBean);
+        assertThat(context.contains(theBean)).isFalse();
+    }
+
+    @Test
+    public void expiredSingletonIsDisposedInBackground() throws Exception {
+        ExpiringDisposableSingletonBean theBean = context.getSingleton(ExpiringDisposableSingletonBean.class);
+        assertThat(context.contains(theBean)).isTrue();
+
+        for (int i = 0; i < 50 && context.contains(theBean); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(context.contains(theBean)).isFalse();
+    }
+
+    @Test
+    public void leastRecentlyUsedSingletonIsEvicted() {
+        final List<Object> evicted = new ArrayList<>();
+        RemovalListener listener = new RemovalListener() {
+            @Override
+            public void onRemoval(final Bean<?> bean, final Object instance, final RemovalCause cause) {
+                if (cause == RemovalCause.SIZE) {
+                    evicted.add(instance);
+                }
+            }
+        };
+
+        context.disposeAll();
+        context.addRemovalListener(listener);
+        try {
+            context.setMaximumSize(2);
+            DisposableSingletonBean first = context.getSingleton(DisposableSingletonBean.class);
+            AnotherDisposableSingletonBean second = context.getSingleton(AnotherDisposableSingletonBean.class);
+            assertThat(context.getSingleton(DisposableSingletonBean.class)).isSameAs(first);
+
+            context.getSingleton(ExpiringDisposableSingletonBean.class);
+            assertThat(evicted).containsOnly(second);
+            assertThat(context.contains(first)).isTrue();
+            assertThat(context.contains(second)).isFalse();
+        } finally {
+            context.setMaximumSize(Long.MAX_VALUE);
+            context.removeRemovalListener(listener);
+        }
+    }
+
+    @Test
+    public void reclaimableSingletonIsSingletonUntilDisposed() {
+        ReclaimableDisposableSingletonBean theBean = context.getSingleton(ReclaimableDisposableSingletonBean.class);
+        assertThat(context.getSingleton(ReclaimableDisposableSingletonBean.class)).isSameAs(theBean);
+        assertThat(context.contains(theBean)).isTrue();
+
+        context.disposeSingleton(theBean);
+        assertThat(context.contains(theBean)).isFalse();
+        assertThat(context.getSingleton(ReclaimableDisposableSingletonBean.class)).isNotSameAs(theBean);
+    }
+
+    @Test
+    public void deployedBeansAreLookedUpThroughTheIndex() {
+        DisposableSingletonContextImpl contextImpl =
+                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+        int deployedBeans = 0;
+        for (Bean<?> bean : beanManager.getBeans(Object.class, new AnnotationLiteral<Any>() { })) {
+            if (bean.getScope() == DisposableSingleton.class) {
+                assertThat(contextImpl.isIndexed(bean)).as(bean.toString()).isTrue();
+                deployedBeans++;
+            }
+        }
+        assertThat(deployedBeans).isGreaterThan(0);
+
+        // beans unknown to the container are looked up by hashing
+        Bean<ReclaimableDisposableSingletonBean> bean = new ReclaimableStubBean();
+        contextImpl.get(bean);
+        assertThat(contextImpl.isIndexed(bean)).isFalse();
+    }
+
+    @Test
+    public void collectedReclaimableInstanceIsReclaimed() throws Exception {
+        DisposableSingletonContextImpl contextImpl =
+                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+        Bean<ReclaimableDisposableSingletonBean> bean = new ReclaimableStubBean();
+        final CountDownLatch released = new CountDownLatch(1);
+        CreationalContext<ReclaimableDisposableSingletonBean> creationalContext =
+                new CreationalContext<ReclaimableDisposableSingletonBean>() {
+            @Override
+            public void push(final ReclaimableDisposableSingletonBean incompleteInstance) {
+                // does not keep the instance reachable
+            }
+
+            @Override
+            public void release() {
+                released.countDown();
+            }
+        };
+
+        ReclaimableDisposableSingletonBean theBean = contextImpl.get(bean, creationalContext);
+        assertThat(contextImpl.get(bean)).isSameAs(theBean);
+        WeakReference<ReclaimableDisposableSingletonBean> reference = new WeakReference<>(theBean);
+        theBean = null;
+
+        // the reference queue is drained by the maintenance thread
+        for (int i = 0; i < 100 && released.getCount() > 0; i++) {
+            System.gc();
+            released.await(100, TimeUnit.MILLISECONDS);
+        }
+        assertThat(reference.get()).isNull();
+        assertThat(released.getCount()).isZero();
+        assertThat(contextImpl.get(bean)).isNull();
+    }
+
+    @Test
+    public void disposingSingletonCallsPreDestroy() {
+        DestroyedDisposableSingletonBean theBean = context.getSingleton(DestroyedDisposableSingletonBean.class);
+        DestroyedDisposableSingletonBean.getDestroyedBeans().clear();
+
+        context.disposeSingleton(theBean);
+        assertThat(DestroyedDisposableSingletonBean.getDestroyedBeans())
+                .containsExactly(DestroyedDisposableSingletonBean.class);
+    }
+
+    @Test
+    public void refreshedSingletonIsSwappedInAndReplacedOneDestroyed() throws Exception {
+        DestroyedDisposableSingletonBean theBean = context.getSingleton(DestroyedDisposableSingletonBean.class);
+        DestroyedDisposableSingletonBean.getDestroyedBeans().clear();
+
+        Future<DestroyedDisposableSingletonBean> refreshed =
+                context.refresh(DestroyedDisposableSingletonBean.class, 0, TimeUnit.SECONDS);
+        DestroyedDisposableSingletonBean replacement = refreshed.get(5, TimeUnit.SECONDS);
+        assertThat(replacement).isNotSameAs(theBean);
+        assertThat(context.getSingleton(DestroyedDisposableSingletonBean.class)).isSameAs(replacement);
+        assertThat(context.contains(theBean)).isFalse();
+
+        for (int i = 0; i < 50 && DestroyedDisposableSingletonBean.getDestroyedBeans().isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(DestroyedDisposableSingletonBean.getDestroyedBeans())
+                .containsExactly(DestroyedDisposableSingletonBean.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failedRefreshReleasesCreationalContextAndKeepsCurrentInstance() throws Exception {
+        FailingDisposableSingletonBean theBean = context.getSingleton(FailingDisposableSingletonBean.class);
+        Bean<FailingDisposableSingletonBean> bean = (Bean<FailingDisposableSingletonBean>)
+                beanManager.resolve(beanManager.getBeans(FailingDisposableSingletonBean.class));
+        final CreationalContext<FailingDisposableSingletonBean> delegate = beanManager.createCreationalContext(bean);
+        final List<Boolean> released = new CopyOnWriteArrayList<>();
+        CreationalContext<FailingDisposableSingletonBean> creationalContext =
+                new CreationalContext<FailingDisposableSingletonBean>() {
+            @Override
+            public void push(final FailingDisposableSingletonBean incompleteInstance) {
+                delegate.push(incompleteInstance);
+            }
+
+            @Override
+            public void release() {
+                released.add(Boolean.TRUE);
+                delegate.release();
+            }
+        };
+
+        FailingDisposableSingletonBean.setFailing(true);
+        try {
+            DisposableSingletonContextImpl contextImpl =
+                    (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+            contextImpl.refresh(bean, creationalContext, 0, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            fail("Refreshing should fail.");
+        } catch (ExecutionException ex) {
+            assertThat(released).containsExactly(Boolean.TRUE);
+            assertThat(context.getSingleton(FailingDisposableSingletonBean.class)).isSameAs(theBean);
+        } finally {
+            FailingDisposableSingletonBean.setFailing(false);
+        }
+    }
+
+    @Test
+    public void proxiedSingletonSurvivesDisposal() {
+        int instanceNumber = proxiedSingletonBean.getInstanceNumber();
+        assertThat(proxiedSingletonBean.getInstanceNumber()).isEqualTo(instanceNumber);
+
+        assertThat(context.dispose(ProxiedDisposableSingletonBean.class)).isEqualTo(1);
+        assertThat(proxiedSingletonBean.getInstanceNumber()).isNotEqualTo(instanceNumber);
+    }
+
+    @Test
+    public void statisticsAreRecordedAndExposedViaJmx() throws Exception {
+        DestroyedDisposableSingletonBean theBean = context.getSingleton(DestroyedDisposableSingletonBean.class);
+        context.getSingleton(DestroyedDisposableSingletonBean.class);
+        context.disposeSingleton(theBean);
+
+        BeanStatistics statistics = null;
+        DisposableSingletonContextImpl contextImpl =
+                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+        for (BeanStatistics beanStatistics : contextImpl.getStatistics()) {
+            if (beanStatistics.getBean().contains(DestroyedDisposableSingletonBean.class.getName())) {
+                statistics = beanStatistics;
+            }
+        }
+        assertThat(statistics).isNotNull();
+        assertThat(statistics.isLive()).isFalse();
+        assertThat(statistics.getHits()).isGreaterThanOrEqualTo(1);
+        assertThat(statistics.getCreations()).isGreaterThanOrEqualTo(1);
+        assertThat(statistics.getDisposals()).isGreaterThanOrEqualTo(1);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(
+                new ObjectName("net.phalanxx.cdiext:type=DisposableSingletonStatistics,scope=DisposableSingleton,*"),
+                null);
+        assertThat(names).isNotEmpty();
+        for (ObjectName name : names) {
+            assertThat((CompositeData[]) server.getAttribute(name, "BeanStatistics")).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void leasedSingletonIsDestroyedWhenLastLeaseIsClosed() throws Exception {
+        DestroyedDisposableSingletonBean theBean;
+        try (SingletonLease<DestroyedDisposableSingletonBean> lease =
+                context.acquire(DestroyedDisposableSingletonBean.class)) {
+            theBean = lease.get();
+            assertThat(context.getSingleton(DestroyedDisposableSingletonBean.class)).isSameAs(theBean);
+            DestroyedDisposableSingletonBean.getDestroyedBeans().clear();
+
+            context.disposeSingleton(theBean);
+            assertThat(context.contains(theBean)).isFalse();
+            assertThat(DestroyedDisposableSingletonBean.getDestroyedBeans()).isEmpty();
+
+            try (SingletonLease<DestroyedDisposableSingletonBean> newLease =
+                    context.acquire(DestroyedDisposableSingletonBean.class)) {
+                assertThat(newLease.get()).isNotSameAs(theBean);
+            }
+        }
+
+        for (int i = 0; i < 50 && DestroyedDisposableSingletonBean.getDestroyedBeans().isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(DestroyedDisposableSingletonBean.getDestroyedBeans())
+                .containsExactly(DestroyedDisposableSingletonBean.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void snapshotWithForeignClassIsRejected() throws Exception {
+        Bean<SnapshotDisposableSingletonBean> bean = (Bean<SnapshotDisposableSingletonBean>)
+                beanManager.resolve(beanManager.getBeans(SnapshotDisposableSingletonBean.class));
+        Path directory = Files.createTempDirectory("snapshots");
+        try {
+            SnapshotStore store = new SnapshotStore(directory);
+            store.write(bean, "1", new Random());
+            try {
+                store.read(bean, "1");
+                fail("Reading a class not belonging to the bean should fail.");
+            } catch (InvalidClassException ex) {
+                assertThat(ex.classname).isEqualTo(Random.class.getName());
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void snapshotSingletonIsRestoredFromSnapshot() throws Exception {
+        Path directory = Files.createTempDirectory("snapshots");
+        try {
+            SnapshotDisposableSingletonBean theBean = context.getSingleton(SnapshotDisposableSingletonBean.class);
+            context.setSnapshotDirectory(directory);
+            assertThat(context.writeSnapshots()).isEqualTo(1);
+
+            context.disposeSingleton(theBean);
+            context.setSnapshotDirectory(directory);
+            int createdInstances = SnapshotDisposableSingletonBean.getCreatedInstances();
+            SnapshotDisposableSingletonBean restored = context.getSingleton(SnapshotDisposableSingletonBean.class);
+            assertThat(restored).isNotSameAs(theBean);
+            assertThat(restored.getInstanceNumber()).isEqualTo(theBean.getInstanceNumber());
+            assertThat(restored.getBeanManager()).isNotNull();
+            assertThat(SnapshotDisposableSingletonBean.getCreatedInstances()).isEqualTo(createdInstances);
+
+            context.disposeSingleton(restored);
+            assertThat(context.getSingleton(SnapshotDisposableSingletonBean.class).getInstanceNumber())
+                    .isNotEqualTo(theBean.getInstanceNumber());
+        } finally {
+            context.setSnapshotDirectory(null);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void invalidationsAreBroadcastInBatchesAndReceived() throws Exception {
+        InJvmInvalidationHub hub = new InJvmInvalidationHub();
+        InvalidationTransport peer = hub.connect();
+        final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+        peer.subscribe(new InvalidationTransport.Receiver() {
+            @Override
+            public void onInvalidation(final Set<String> beanKeys) {
+                batches.add(beanKeys);
+            }
+        });
+
+        context.setInvalidationTransport(hub.connect(), 100, TimeUnit.MILLISECONDS);
+        try {
+            context.dispose(DisposableSingletonBean.class);
+            context.dispose(DisposableSingletonBean.class);
+            for (int i = 0; i < 50 && batches.isEmpty(); i++) {
+                Thread.sleep(20);
+            }
+            assertThat(batches).hasSize(1);
+            assertThat(batches.get(0)).hasSize(1);
+
+            DisposableSingletonBean theBean = context.getSingleton(DisposableSingletonBean.class);
+            assertThat(context.contains(theBean)).isTrue();
+            peer.publish(batches.get(0));
+            assertThat(context.contains(theBean)).isFalse();
+        } finally {
+            context.setInvalidationTransport(null);
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareOneInstance() throws Exception {
+        int createdBefore = SlowDisposableSingletonBean.getCreatedInstances();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SlowDisposableSingletonBean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<SlowDisposableSingletonBean>() {
+                    @Override
+                    public SlowDisposableSingletonBean call() throws Exception {
+                        start.await();
+                        return context.getSingleton(SlowDisposableSingletonBean.class);
+                    }
+                }));
+            }
+            start.countDown();
+
+            SlowDisposableSingletonBean theBean = results.get(0).get();
+            for (Future<SlowDisposableSingletonBean> result : results) {
+                assertThat(result.get()).isSameAs(theBean);
+            }
+            assertThat(SlowDisposableSingletonBean.getCreatedInstances() - createdBefore).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void disposeRegionDisposesOnlyItsBeans() throws Exception {
+        PricingDisposableSingletonBean pricingBean = context.getSingleton(PricingDisposableSingletonBean.class);
+        DisposableSingletonBean otherBean = context.getSingleton(DisposableSingletonBean.class);
+
+        assertThat(context.disposeRegion("pricing")).isTrue();
+        assertThat(context.contains(pricingBean)).isFalse();
+        assertThat(context.contains(otherBean)).isTrue();
+        assertThat(context.getSingleton(PricingDisposableSingletonBean.class)).isNotSameAs(pricingBean);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!pricingBean.isDestroyed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pricingBean.isDestroyed()).isTrue();
+        assertThat(context.disposeRegion("unknown")).isFalse();
+    }
+
+    @Test
+    public void getSingletonWithQualifiers() {
+        NamedDisposableSingletonBean namedBean =
+                context.getSingleton(NamedDisposableSingletonBean.class, new NamedLiteral("namedSingleton"));
+        assertThat(namedBean).isNotNull();
+        assertThat(context.getSingleton(NamedDisposableSingletonBean.class, new NamedLiteral("namedSingleton")))
+                .isSameAs(namedBean);
+        assertThat(context.getSingleton(NamedDisposableSingletonBean.class)).isSameAs(namedBean);
+        assertThat(context.getSingleton(NamedDisposableSingletonBean.class, new NamedLiteral("other"))).isNull();
+    }
+
+    @Test
+    public void qualifiedEventDisposesSingleton() {
+        EventDisposedDisposableSingletonBean eventBean =
+                context.getSingleton(EventDisposedDisposableSingletonBean.class);
+
+        beanManager.fireEvent(new ConfigChanged());
+        assertThat(context.contains(eventBean)).isTrue();
+
+        beanManager.fireEvent(new ConfigChanged(), AnnotationUtil.newInstance(Urgent.class));
+        assertThat(context.contains(eventBean)).isFalse();
+        assertThat(context.getSingleton(EventDisposedDisposableSingletonBean.class)).isNotSameAs(eventBean);
+    }
+
+    @Test
+    public void fileChangeRefreshesSingleton() throws Exception {
+        FileBackedDisposableSingletonBean fileBackedBean =
+                context.getSingleton(FileBackedDisposableSingletonBean.class);
+
+        Path file = Paths.get(FileBackedDisposableSingletonBean.FILE);
+        Files.write(file, "first".getBytes("UTF-8"));
+        Files.write(file, "second".getBytes("UTF-8"));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (context.getSingleton(FileBackedDisposableSingletonBean.class) == fileBackedBean
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(context.getSingleton(FileBackedDisposableSingletonBean.class)).isNotSameAs(fileBackedBean);
+    }
+
+    @Test
+    public void reentrantCreationIsDetected() {
+        try {
+            context.getSingleton(ReentrantDisposableSingletonBean.class);
+            fail("Reentrant creation has not been detected.");
+        } catch (RuntimeException ex) {
+            Throwable cause = ex;
+            while (cause != null && !(cause instanceof IllegalStateException)) {
+                cause = cause.getCause();
+            }
+            assertThat(cause).isNotNull();
+        }
+    }
+
+    @SuppressWarnings("all")
+    private static class NamedLiteral extends AnnotationLiteral<Named> implements Named {
+        private final String value;
+
+        public NamedLiteral(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+    }
+
+    /**
+     * Bean creating its instances without a container, so nothing but the context refers to them.
+     */
+    private static class ReclaimableStubBean implements Bean<ReclaimableDisposableSingletonBean> {
+
+        @Override
+        public Set<Type> getTypes() {
+            return new HashSet<Type>(Arrays.asList(ReclaimableDisposableSingletonBean.class, Object.class));
+        }
+
+        @Override
+        public Set<Annotation> getQualifiers() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Class<? extends Annotation> getScope() {
+            return DisposableSingleton.class;
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+
+        @Override
+        public Set<Class<? extends Annotation>> getStereotypes() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Class<?> getBeanClass() {
+            return ReclaimableDisposableSingletonBean.class;
+        }
+
+        @Override
+        public boolean isAlternative() {
+            return false;
+        }
+
+        @Override
+        public boolean isNullable() {
+            return false;
+        }
+
+        @Override
+        public Set<InjectionPoint> getInjectionPoints() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public ReclaimableDisposableSingletonBean create(
+                final CreationalContext<ReclaimableDisposableSingletonBean> creationalContext) {
+            return new ReclaimableDisposableSingletonBean();
+        }
+
+        @Override
+        public void destroy(final ReclaimableDisposableSingletonBean instance,
+                            final CreationalContext<ReclaimableDisposableSingletonBean> creationalContext) {
+            creationalContext.release();
+        }
+    }
+
     private Object getContextualInstance() {
         Context theContext = beanManager.getContext(DisposableSingleton.class);
 
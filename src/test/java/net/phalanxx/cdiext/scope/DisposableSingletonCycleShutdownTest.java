@@ -0,0 +1,82 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+
+import net.phalanxx.cdiext.beans.DestroyedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+import net.phalanxx.cdiext.beans.FirstCyclicDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.SecondCyclicDisposableSingletonBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class DisposableSingletonCycleShutdownTest {
+
+    @Inject BeanManager beanManager;
+    @Inject DisposableSingletonContext context;
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(DisposableSingletonContext.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Test
+    public void dependenciesOfACycleWaitForTheCycle() {
+        // the first bean depends on the second one and on the destroyed bean
+        context.getSingleton(FirstCyclicDisposableSingletonBean.class);
+        // the second bean is created again and now depends on the first one
+        context.disposeSingleton(context.getSingleton(SecondCyclicDisposableSingletonBean.class));
+        SecondCyclicDisposableSingletonBean.setLookupPeer(true);
+        try {
+            context.getSingleton(SecondCyclicDisposableSingletonBean.class);
+        } finally {
+            SecondCyclicDisposableSingletonBean.setLookupPeer(false);
+        }
+        DestroyedDisposableSingletonBean.getDestroyedBeans().clear();
+
+        ((DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class)).shutdown();
+
+        List<Class<?>> destroyedBeans = DestroyedDisposableSingletonBean.getDestroyedBeans();
+        assertThat(destroyedBeans).containsOnly(FirstCyclicDisposableSingletonBean.class,
+                                                SecondCyclicDisposableSingletonBean.class,
+                                                DestroyedDisposableSingletonBean.class);
+        assertThat(destroyedBeans.get(destroyedBeans.size() - 1)).isEqualTo(DestroyedDisposableSingletonBean.class);
+    }
+
+}
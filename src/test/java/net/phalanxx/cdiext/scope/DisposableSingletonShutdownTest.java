@@ -0,0 +1,80 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+
+import net.phalanxx.cdiext.beans.DependentDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.DestroyedDisposableSingletonBean;
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class DisposableSingletonShutdownTest {
+
+    @Inject BeanManager beanManager;
+    @Inject DisposableSingletonContext context;
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(DisposableSingletonContext.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Test
+    public void dependentsAreDestroyedBeforeTheirDependencies() {
+        DependentDisposableSingletonBean dependent = context.getSingleton(DependentDisposableSingletonBean.class);
+        DestroyedDisposableSingletonBean dependency = context.getSingleton(DestroyedDisposableSingletonBean.class);
+        DestroyedDisposableSingletonBean.getDestroyedBeans().clear();
+
+        DisposableSingletonContextImpl contextImpl =
+                (DisposableSingletonContextImpl) beanManager.getContext(DisposableSingleton.class);
+        contextImpl.shutdown();
+
+        assertThat(DestroyedDisposableSingletonBean.getDestroyedBeans())
+                .containsExactly(DependentDisposableSingletonBean.class, DestroyedDisposableSingletonBean.class);
+        assertThat(context.contains(dependent)).isFalse();
+        assertThat(context.contains(dependency)).isFalse();
+
+        long shutdowns = 0;
+        for (BeanStatistics statistics : contextImpl.getStatistics()) {
+            if (statistics.getBean().contains(DestroyedDisposableSingletonBean.class.getName() + "]")) {
+                shutdowns += statistics.getShutdowns();
+            }
+        }
+        assertThat(shutdowns).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,160 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+import net.phalanxx.cdiext.beans.PooledBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class PooledContextTest {
+
+    @Inject PooledContext context;
+
+    @Inject PooledBean pooledBean;
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(PooledContext.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(new StringAsset("<beans><interceptors><class>"
+                                                                + ReturnToPoolInterceptor.class.getName()
+                                                                + "</class></interceptors></beans>"),
+                                                "beans.xml");
+    }
+
+    @After
+    public void releaseLeases() {
+        context.releaseAll();
+    }
+
+    @Test
+    public void poolIsPrefilledAndInstancesAreReused() {
+        assertThat(PooledBean.getCreatedInstances()).isGreaterThanOrEqualTo(1);
+
+        PooledBean theBean = context.getPooled(PooledBean.class);
+        int createdInstances = PooledBean.getCreatedInstances();
+        assertThat(context.getPooled(PooledBean.class)).isSameAs(theBean);
+        assertThat(context.contains(theBean)).isTrue();
+
+        context.release(theBean);
+        assertThat(context.contains(theBean)).isFalse();
+        context.getPooled(PooledBean.class);
+        assertThat(PooledBean.getCreatedInstances()).isEqualTo(createdInstances);
+    }
+
+    @Test
+    public void borrowersWaitWhilePoolIsExhausted() throws Exception {
+        final PooledBean theBean = context.getPooled(PooledBean.class);
+        final CountDownLatch borrowed = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PooledBean> otherBean = executor.submit(new Callable<PooledBean>() {
+                @Override
+                public PooledBean call() throws Exception {
+                    PooledBean pooledBean = context.getPooled(PooledBean.class);
+                    borrowed.countDown();
+                    released.await();
+                    context.releaseAll();
+                    return pooledBean;
+                }
+            });
+            borrowed.await();
+
+            Future<PooledBean> thirdBean = executor.submit(new Callable<PooledBean>() {
+                @Override
+                public PooledBean call() {
+                    return context.getPooled(PooledBean.class);
+                }
+            });
+            try {
+                thirdBean.get();
+                fail("Borrowing from an exhausted pool should time out.");
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+
+            released.countDown();
+            assertThat(otherBean.get()).isNotSameAs(theBean);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void instancesAreGivenBackWhenInvocationReturns() throws Exception {
+        pooledBean.use();
+        assertThat(context.releaseAll()).isZero();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        pooledBean.use();
+                        return context.releaseAll();
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isZero();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void explicitlyBorrowedInstancesAreNotGivenBackByInvocations() throws Exception {
+        PooledBean theBean = context.getPooled(PooledBean.class);
+        assertThat(pooledBean.use()).isEqualTo(theBean.getInstanceNumber());
+        assertThat(context.contains(theBean)).isTrue();
+    }
+
+}
@@ -0,0 +1,191 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.Bean;
+import javax.inject.Inject;
+
+import net.phalanxx.cdiext.beans.BlockingThreadSingletonBean;
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+import net.phalanxx.cdiext.beans.FirstBlockingThreadSingletonBean;
+import net.phalanxx.cdiext.beans.SecondBlockingThreadSingletonBean;
+import net.phalanxx.cdiext.beans.ThreadSingletonBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class ThreadSingletonContextTest {
+
+    @Inject ThreadSingletonContext context;
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(ThreadSingletonContext.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Test
+    public void beanIsSingletonPerThread() throws Exception {
+        ThreadSingletonBean theBean = context.getSingleton(ThreadSingletonBean.class);
+        assertThat(theBean).isNotNull();
+        assertThat(context.getSingleton(ThreadSingletonBean.class)).isSameAs(theBean);
+        assertThat(context.contains(theBean)).isTrue();
+
+        ThreadSingletonBean otherThreadsBean = runOnOtherThread(new Callable<ThreadSingletonBean>() {
+            @Override
+            public ThreadSingletonBean call() {
+                return context.getSingleton(ThreadSingletonBean.class);
+            }
+        });
+        assertThat(otherThreadsBean).isNotNull();
+        assertThat(otherThreadsBean).isNotSameAs(theBean);
+        assertThat(context.contains(otherThreadsBean)).isFalse();
+    }
+
+    @Test
+    public void disposingSingletonWorks() {
+        ThreadSingletonBean theBean = context.getSingleton(ThreadSingletonBean.class);
+
+        context.disposeSingleton(theBean);
+        assertThat(context.contains(theBean)).isFalse();
+        assertThat(theBean.isDestroyed()).isTrue();
+        assertThat(context.getSingleton(ThreadSingletonBean.class)).isNotSameAs(theBean);
+    }
+
+    @Test
+    public void endingThreadDestroysItsInstances() {
+        ThreadSingletonBean theBean = context.getSingleton(ThreadSingletonBean.class);
+
+        context.endThread();
+        assertThat(context.contains(theBean)).isFalse();
+        assertThat(theBean.isDestroyed()).isTrue();
+    }
+
+    @Test
+    public void instancesOfOtherThreadsAreDestroyedByTheirThread() throws Exception {
+        ThreadSingletonBean theBean = context.getSingleton(ThreadSingletonBean.class);
+
+        assertThat(runOnOtherThread(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return context.dispose(ThreadSingletonBean.class);
+            }
+        })).isGreaterThanOrEqualTo(1);
+        assertThat(context.contains(theBean)).isFalse();
+        assertThat(theBean.isDestroyed()).isFalse();
+
+        assertThat(context.getSingleton(ThreadSingletonBean.class)).isNotSameAs(theBean);
+        assertThat(theBean.isDestroyed()).isTrue();
+    }
+
+    @Test
+    public void instancesDisposedWhileTheirThreadEndsAreDestroyed() throws Exception {
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        ExecutorService disposer = Executors.newSingleThreadExecutor();
+        try {
+            final BlockingThreadSingletonBean[] beans = owner.submit(new Callable<BlockingThreadSingletonBean[]>() {
+                @Override
+                public BlockingThreadSingletonBean[] call() {
+                    return new BlockingThreadSingletonBean[] {
+                        context.getSingleton(FirstBlockingThreadSingletonBean.class),
+                        context.getSingleton(SecondBlockingThreadSingletonBean.class)};
+                }
+            }).get();
+
+            // the disposer stops at the instances of the owner until the owner is destroying one of them
+            final CountDownLatch filtering = new CountDownLatch(1);
+            final CountDownLatch ownerDestroying = new CountDownLatch(1);
+            Future<Integer> disposed = disposer.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return context.disposeMatching(new BeanFilter() {
+                        @Override
+                        public boolean matches(final Bean<?> bean) {
+                            if (!BlockingThreadSingletonBean.class.isAssignableFrom(bean.getBeanClass())) {
+                                return false;
+                            }
+                            filtering.countDown();
+                            try {
+                                ownerDestroying.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException ex) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return true;
+                        }
+                    });
+                }
+            });
+            assertThat(filtering.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<?> ended = owner.submit(new Runnable() {
+                @Override
+                public void run() {
+                    context.endThread();
+                }
+            });
+            for (int i = 0; i < 250 && !beans[0].isDestroying() && !beans[1].isDestroying(); i++) {
+                Thread.sleep(20);
+            }
+            BlockingThreadSingletonBean destroyedByOwner = beans[0].isDestroying() ? beans[0] : beans[1];
+            BlockingThreadSingletonBean disposedBean = destroyedByOwner == beans[0] ? beans[1] : beans[0];
+            disposedBean.proceed();
+            ownerDestroying.countDown();
+
+            assertThat(disposed.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            destroyedByOwner.proceed();
+            ended.get(5, TimeUnit.SECONDS);
+            assertThat(destroyedByOwner.isDestroyed()).isTrue();
+            assertThat(disposedBean.isDestroyed()).isTrue();
+        } finally {
+            owner.shutdown();
+            disposer.shutdown();
+        }
+    }
+
+    private <T> T runOnOtherThread(final Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(task).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
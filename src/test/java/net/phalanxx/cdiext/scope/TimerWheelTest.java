@@ -0,0 +1,123 @@
+package net.phalanxx.cdiext.scope;
+
+/*
+ * ---LICENSE_BEGIN---
+ * cdi-ext - Some extensions for CDI
+ * ---
+ * Copyright (C) 2013 Roland Bachlechner
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---LICENSE_END---
+ */
+
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.phalanxx.cdiext.beans.DisposableSingletonBean;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(Arquillian.class)
+public class TimerWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Deployment
+    public static JavaArchive createDeployment() {
+        return ShrinkWrap.create(JavaArchive.class)
+                         .addPackage(TimerWheel.class.getPackage())
+                         .addPackage(DisposableSingletonBean.class.getPackage())
+                         .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Test
+    public void timersScheduledDuringAdvanceFireOnNextTick() throws Exception {
+        final TimerWheel wheel = new TimerWheel(manualExecutor(), TICK_NANOS, TimeUnit.NANOSECONDS, 512);
+        final AtomicLong now = new AtomicLong(System.nanoTime());
+        final AtomicInteger fired = new AtomicInteger();
+        final AtomicBoolean scheduling = new AtomicBoolean(true);
+        final int timers = 100000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> ticking = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // keeps advancing while timers are scheduled, then two more ticks
+                    for (int remaining = 2; remaining > 0; ) {
+                        wheel.advance(now.addAndGet(TICK_NANOS));
+                        if (!scheduling.get()) {
+                            remaining--;
+                        }
+                    }
+                    return null;
+                }
+            });
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = 0; i < timers; i++) {
+                        wheel.schedule(new TimerWheel.Timer() {
+                            @Override
+                            public long expire(final long time) {
+                                fired.incrementAndGet();
+                                return DONE;
+                            }
+                        }, now.get());
+                    }
+                    scheduling.set(false);
+                    return null;
+                }
+            }).get(30, TimeUnit.SECONDS);
+            ticking.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(fired.get()).isEqualTo(timers);
+    }
+
+    /**
+     * Returns an executor which never runs anything, so the wheel is only advanced by the test.
+     */
+    private static ScheduledExecutorService manualExecutor() {
+        return (ScheduledExecutorService) Proxy.newProxyInstance(TimerWheelTest.class.getClassLoader(),
+                new Class<?>[] {ScheduledExecutorService.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return null;
+            }
+        });
+    }
+
+}
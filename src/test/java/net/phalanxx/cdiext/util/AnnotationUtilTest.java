@@ -28,8 +28,10 @@ import java.util.Set;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.Dependent;
+import javax.enterprise.inject.Default;
 import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.util.AnnotationLiteral;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -148,4 +150,14 @@ public class AnnotationUtilTest {
         assertThat(qualifiers).isEmpty();
     }
 
+    @Test
+    public void newInstanceEqualsAnnotationLiteral() {
+        Annotation literal = new AnnotationLiteral<Default>() {};
+        Default instance = AnnotationUtil.newInstance(Default.class);
+        assertThat(instance.annotationType()).isEqualTo(Default.class);
+        assertThat(instance).isEqualTo(literal);
+        assertThat(literal).isEqualTo(instance);
+        assertThat(instance.hashCode()).isEqualTo(literal.hashCode());
+    }
+
 }